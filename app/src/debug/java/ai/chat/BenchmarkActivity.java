@@ -0,0 +1,52 @@
+package ai.chat;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.ScrollView;
+import android.widget.TextView;
+import androidx.appcompat.app.AppCompatActivity;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+public class BenchmarkActivity extends AppCompatActivity {
+
+    private static final String TAG = "BenchmarkActivity";
+    private static final String RESULT_FILE = "benchmark.json";
+
+    private TextView output;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        output = new TextView(this);
+        output.setPadding(24, 24, 24, 24);
+        output.setTextIsSelectable(true);
+        ScrollView scrollView = new ScrollView(this);
+        scrollView.addView(output);
+        setContentView(scrollView);
+
+        output.setText("در حال اجرای بنچمارک‌ها...");
+        Thread thread = new Thread(this::runBenchmarks, "benchmark");
+        thread.start();
+    }
+
+    private void runBenchmarks() {
+        BenchmarkSuite suite = new BenchmarkSuite(this);
+        List<BenchmarkSuite.Result> results = suite.run();
+        String report = BenchmarkSuite.format(results) + "\n" + suite.formatSizes();
+        try {
+            File file = suite.writeJson(results, RESULT_FILE);
+            report += "\n" + file.getAbsolutePath();
+            Log.i(TAG, "Benchmark results written to " + file.getAbsolutePath());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write benchmark results: ", e);
+        }
+        Log.i(TAG, report);
+        String text = report;
+        mainHandler.post(() -> output.setText(text));
+    }
+}
@@ -0,0 +1,384 @@
+package ai.chat;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.SystemClock;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import okio.Buffer;
+import okio.ByteString;
+
+public class BenchmarkSuite {
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int[] ROW_COUNTS = {10, 1_000, 100_000};
+    private static final int[] DIFF_SIZES = {1_000, 10_000};
+    private static final int STREAM_LINES = 2_000;
+    private static final int EXCHANGES = 200;
+    private static final int LARGE_MESSAGES = 200;
+    private static final String SAMPLE_TEXT = "سلام! این یک پیام آزمایشی برای سنجش کارایی است. "
+            + "It mixes **markdown**, `code` and plain words so that parsing and diffing see realistic input.";
+
+    private final Context context;
+    private final List<Result> results = new ArrayList<>();
+    private final Map<String, Long> sizes = new LinkedHashMap<>();
+
+    public static class Result {
+        final String name;
+        final int size;
+        final long[] samplesNs;
+
+        Result(String name, int size, long[] samplesNs) {
+            this.name = name;
+            this.size = size;
+            this.samplesNs = samplesNs;
+        }
+
+        long median() {
+            long[] sorted = samplesNs.clone();
+            Arrays.sort(sorted);
+            return sorted[sorted.length / 2];
+        }
+
+        long min() {
+            long min = Long.MAX_VALUE;
+            for (long sample : samplesNs) min = Math.min(min, sample);
+            return min;
+        }
+
+        long mean() {
+            long sum = 0;
+            for (long sample : samplesNs) sum += sample;
+            return sum / samplesNs.length;
+        }
+    }
+
+    public BenchmarkSuite(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public List<Result> run() {
+        results.clear();
+        sizes.clear();
+        benchmarkDao();
+        benchmarkAppendExchange();
+        benchmarkCompression();
+        benchmarkDiff();
+        benchmarkResponseParsing();
+        benchmarkPayloadBuilding();
+        return results;
+    }
+
+    private void benchmarkDao() {
+        for (int rows : ROW_COUNTS) {
+            AppDatabase db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+            MessageDao dao = db.messageDao();
+            long sessionId = db.chatSessionDao().insertSession(new ChatSession("benchmark"));
+
+            Runnable clear = () -> db.getOpenHelper().getWritableDatabase().execSQL("DELETE FROM messages");
+            Runnable insertRows = () -> db.runInTransaction(() -> {
+                for (int i = 0; i < rows; i++) {
+                    dao.insertOrUpdate(new Message(sessionId, SAMPLE_TEXT, i % 2));
+                }
+            });
+
+            int iterations = rows >= 100_000 ? 1 : 5;
+            measure("MessageDao.insertOrUpdate", rows, iterations, clear, insertRows);
+            measure("MessageDao.getMessagesForSession", rows, 5, null, () -> dao.getMessagesForSession(sessionId));
+            measure("MessageDao.getLatestMessages", rows, 5, null,
+                    () -> dao.getLatestMessages(sessionId, MessagePager.PAGE_SIZE));
+            db.close();
+        }
+    }
+
+    private void benchmarkAppendExchange() {
+        String name = "benchmark_database";
+        context.deleteDatabase(name);
+        AppDatabase db = Room.databaseBuilder(context, AppDatabase.class, name)
+                .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+                .build();
+        MessageDao dao = db.messageDao();
+        ChatSessionDao sessionDao = db.chatSessionDao();
+        ChatSession session = new ChatSession("benchmark");
+        long sessionId = sessionDao.insertSession(session);
+        session.setId(sessionId);
+
+        measure("insertOrUpdate + updateSession (disk, baseline: four transactions each)", EXCHANGES, 3, null, () -> {
+            for (int i = 0; i < EXCHANGES; i++) {
+                for (Message message : new Message[]{
+                        new Message(sessionId, SAMPLE_TEXT, Message.TYPE_USER), placeholder(sessionId)}) {
+                    dao.insertOrUpdate(message);
+                    session.setLastModified(System.currentTimeMillis());
+                    sessionDao.updateSession(session);
+                }
+            }
+        });
+        measure("MessageDao.appendExchange (disk, one transaction each)", EXCHANGES, 3, null, () -> {
+            for (int i = 0; i < EXCHANGES; i++) {
+                Message prompt = new Message(sessionId, SAMPLE_TEXT, Message.TYPE_USER);
+                dao.appendExchange(prompt, placeholder(sessionId));
+            }
+        });
+        db.close();
+        context.deleteDatabase(name);
+    }
+
+    private static Message placeholder(long sessionId) {
+        Message placeholder = new Message(sessionId, "...", Message.TYPE_AI);
+        placeholder.setStatus(Message.STATUS_STREAMING);
+        return placeholder;
+    }
+
+    private void benchmarkCompression() {
+        StringBuilder code = new StringBuilder();
+        for (int i = 0; code.length() < 20 * 1024; i++) {
+            code.append("```java\npublic int value").append(i).append("(List<Message> messages) {\n")
+                    .append("    return messages.size() * ").append(i).append(";\n}\n```\n").append(SAMPLE_TEXT).append('\n');
+        }
+        String body = code.toString();
+
+        for (boolean compressed : new boolean[]{false, true}) {
+            String label = compressed ? "deflate" : "plain";
+            String name = "benchmark_codec_" + label;
+            context.deleteDatabase(name);
+            AppDatabase db = Room.databaseBuilder(context, AppDatabase.class, name)
+                    .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+                    .build();
+            MessageDao dao = db.messageDao();
+            long sessionId = db.chatSessionDao().insertSession(new ChatSession("benchmark"));
+            SupportSQLiteDatabase database = db.getOpenHelper().getWritableDatabase();
+
+            db.runInTransaction(() -> {
+                for (int i = 0; i < LARGE_MESSAGES; i++) {
+                    if (compressed) {
+                        dao.insertOrUpdate(new Message(sessionId, body + i, Message.TYPE_AI));
+                    } else {
+                        database.execSQL("INSERT INTO messages (session_id, text, type) VALUES (?, ?, ?)",
+                                new Object[]{sessionId, body + i, Message.TYPE_AI});
+                    }
+                }
+            });
+            try (Cursor cursor = database.query("PRAGMA wal_checkpoint(TRUNCATE)")) {
+                cursor.getCount();
+            }
+            sizes.put("Database file, " + LARGE_MESSAGES + " x 20KB messages (" + label + ")",
+                    context.getDatabasePath(name).length());
+
+            measure("MessageDao.getMessagesForSession, 20KB bodies (" + label + ")", LARGE_MESSAGES, 10, null,
+                    () -> dao.getMessagesForSession(sessionId));
+            measure("Load + getText() on every row, 20KB bodies (" + label + ")", LARGE_MESSAGES, 10, null, () -> {
+                for (Message message : dao.getMessagesForSession(sessionId)) {
+                    message.getText();
+                }
+            });
+            db.close();
+            context.deleteDatabase(name);
+        }
+    }
+
+    private void benchmarkDiff() {
+        for (int size : DIFF_SIZES) {
+            List<Message> oldList = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Message message = new Message(1, SAMPLE_TEXT + i, i % 2);
+                message.setId(i + 1);
+                oldList.add(message);
+            }
+            List<Message> newList = new ArrayList<>(oldList);
+            Message edited = new Message(1, SAMPLE_TEXT + "edited", Message.TYPE_AI);
+            edited.setId(size);
+            newList.set(size - 1, edited);
+            Message appended = new Message(1, SAMPLE_TEXT, Message.TYPE_USER);
+            appended.setId(size + 1);
+            newList.add(appended);
+
+            measure("MessageAdapter.DIFF_CALLBACK calculateDiff", size, 10, null,
+                    () -> DiffUtil.calculateDiff(new ListDiff(oldList, newList)));
+        }
+    }
+
+    private void benchmarkResponseParsing() {
+        List<String> lines = new ArrayList<>(STREAM_LINES);
+        for (int i = 0; i < STREAM_LINES; i++) {
+            lines.add(i % 2 == 0
+                    ? "{\"response\":\"توکن " + i + " \",\"p\":\"abcdefghijklmnopqrstuvwxyz\"}"
+                    : "{\"id\":\"chatcmpl\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"token " + i + " \"}}]}");
+        }
+        Gson gson = new Gson();
+
+        measure("Response parsing: Gson JsonObject tree", STREAM_LINES, 20, null, () -> {
+            StringBuilder text = new StringBuilder();
+            for (String line : lines) {
+                JsonObject chunk = gson.fromJson(line, JsonObject.class);
+                if (chunk.has("response")) {
+                    text.append(chunk.get("response").getAsString());
+                } else {
+                    text.append(chunk.getAsJsonArray("choices").get(0).getAsJsonObject()
+                            .getAsJsonObject("delta").get("content").getAsString());
+                }
+            }
+        });
+        Buffer events = new Buffer();
+        for (String line : lines) {
+            events.writeUtf8("data: ").writeUtf8(line).writeUtf8("\n\n");
+        }
+        events.writeUtf8("data: [DONE]\n\n");
+        ByteString stream = events.readByteString();
+        measure("Response parsing: WorkerCodec EventStream", STREAM_LINES, 20, null, () -> {
+            StringBuilder text = new StringBuilder();
+            try {
+                WorkerCodec.EventStream parser = new WorkerCodec.EventStream(new Buffer().write(stream));
+                while (parser.hasNext()) {
+                    text.append(parser.next());
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private void benchmarkPayloadBuilding() {
+        List<WorkerCodec.Turn> turns = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            turns.add(new WorkerCodec.Turn(i % 2 == 0 ? "user" : "assistant", SAMPLE_TEXT));
+        }
+
+        measure("Payload building: JsonObject tree + toString", turns.size(), 50, null, () -> {
+            JsonArray messages = new JsonArray();
+            for (WorkerCodec.Turn turn : turns) {
+                JsonObject message = new JsonObject();
+                message.addProperty("role", turn.role);
+                message.addProperty("content", turn.content);
+                messages.add(message);
+            }
+            JsonObject payload = new JsonObject();
+            payload.add("messages", messages);
+            payload.addProperty("stream", true);
+            new Buffer().writeUtf8(payload.toString());
+        });
+        measure("Payload building: WorkerCodec JsonWriter", turns.size(), 50, null, () -> {
+            try {
+                WorkerCodec.requestBody(turns, true).writeTo(new Buffer());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private void measure(String name, int size, int iterations, Runnable setup, Runnable task) {
+        int warmup = size >= 100_000 ? 0 : WARMUP_ITERATIONS;
+        for (int i = 0; i < warmup; i++) {
+            if (setup != null) setup.run();
+            task.run();
+        }
+        long[] samples = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            if (setup != null) setup.run();
+            long start = SystemClock.elapsedRealtimeNanos();
+            task.run();
+            samples[i] = SystemClock.elapsedRealtimeNanos() - start;
+        }
+        results.add(new Result(name, size, samples));
+    }
+
+    public File writeJson(List<Result> results, String fileName) throws IOException {
+        File file = new File(context.getExternalFilesDir(null), fileName);
+        try (JsonWriter writer = new JsonWriter(new FileWriter(file))) {
+            writer.setIndent("  ");
+            writer.beginObject();
+            writer.name("timestamp").value(System.currentTimeMillis());
+            writer.name("device").value(Build.MODEL);
+            writer.name("sdk").value(Build.VERSION.SDK_INT);
+            writer.name("results").beginArray();
+            for (Result result : results) {
+                writer.beginObject();
+                writer.name("name").value(result.name);
+                writer.name("size").value(result.size);
+                writer.name("iterations").value(result.samplesNs.length);
+                writer.name("minNs").value(result.min());
+                writer.name("medianNs").value(result.median());
+                writer.name("meanNs").value(result.mean());
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.name("sizes").beginObject();
+            for (Map.Entry<String, Long> size : sizes.entrySet()) {
+                writer.name(size.getKey()).value(size.getValue());
+            }
+            writer.endObject();
+            writer.endObject();
+        }
+        return file;
+    }
+
+    public String formatSizes() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Long> size : sizes.entrySet()) {
+            out.append(size.getKey()).append(": ").append(size.getValue() / 1024).append(" KB\n");
+        }
+        return out.toString();
+    }
+
+    public static String format(List<Result> results) {
+        StringBuilder out = new StringBuilder();
+        for (Result result : results) {
+            out.append(result.name).append(" [").append(result.size).append("]: median ")
+                    .append(result.median() / 1_000).append("µs, min ")
+                    .append(result.min() / 1_000).append("µs\n");
+        }
+        return out.toString();
+    }
+
+    private static class ListDiff extends DiffUtil.Callback {
+        private final List<Message> oldList;
+        private final List<Message> newList;
+
+        ListDiff(List<Message> oldList, List<Message> newList) {
+            this.oldList = oldList;
+            this.newList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return MessageAdapter.DIFF_CALLBACK.areItemsTheSame(oldList.get(oldItemPosition), newList.get(newItemPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return MessageAdapter.DIFF_CALLBACK.areContentsTheSame(oldList.get(oldItemPosition), newList.get(newItemPosition));
+        }
+
+        @Nullable
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            return MessageAdapter.DIFF_CALLBACK.getChangePayload(oldList.get(oldItemPosition),
+                    newList.get(newItemPosition));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package ai.chat;
+
+import androidx.annotation.NonNull;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.GzipSource;
+import okio.Okio;
+
+public class MockWorker {
+
+    private static final String[] WORDS = {"سلام", "این", "پاسخ", "آزمایشی", "است", "token", "stream", "`code`",
+            "**markdown**", "\n"};
+
+    private final Config config;
+    private final MockWebServer server = new MockWebServer();
+    private final Random random = new Random(42);
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger injectedErrors = new AtomicInteger();
+
+    public static class Config {
+        int tokensPerResponse = 200;
+        int tokensPerSecond = 400;
+        long latencyMs = 50;
+        long jitterMs = 100;
+        double errorRate = 0.02;
+        double streamRatio = 1.0;
+        boolean openAiFormat;
+    }
+
+    public MockWorker(Config config) {
+        this.config = config;
+        server.setDispatcher(new Dispatcher() {
+            @NonNull
+            @Override
+            public MockResponse dispatch(@NonNull RecordedRequest request) {
+                return respond(request);
+            }
+        });
+    }
+
+    public String start() throws IOException {
+        server.start();
+        return server.url("/").toString();
+    }
+
+    public void shutdown() throws IOException {
+        server.shutdown();
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    public int getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    private MockResponse respond(RecordedRequest request) {
+        requests.incrementAndGet();
+        double roll;
+        long delay;
+        int tokens;
+        boolean stream = isStreamRequest(request);
+        synchronized (random) {
+            roll = random.nextDouble();
+            delay = config.latencyMs + (config.jitterMs > 0 ? (long) (random.nextDouble() * config.jitterMs) : 0);
+            tokens = Math.max(1, config.tokensPerResponse / 2 + random.nextInt(config.tokensPerResponse + 1));
+            stream = stream && random.nextDouble() < config.streamRatio;
+        }
+
+        MockResponse response = new MockResponse().setHeadersDelay(delay, TimeUnit.MILLISECONDS);
+        if (roll < config.errorRate / 2) {
+            injectedErrors.incrementAndGet();
+            return response.setResponseCode(503).setBody("{\"error\":\"overloaded\"}");
+        }
+        boolean disconnect = roll < config.errorRate;
+        if (disconnect) injectedErrors.incrementAndGet();
+
+        if (!stream) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < tokens; i++) text.append(word(i));
+            response.setHeader("Content-Type", "application/json").setBody(event(text.toString()));
+        } else {
+            Buffer body = new Buffer();
+            for (int i = 0; i < tokens; i++) {
+                body.writeUtf8("data: ").writeUtf8(event(word(i))).writeUtf8("\n\n");
+            }
+            body.writeUtf8("data: [DONE]\n\n");
+            long averageEventBytes = Math.max(1, body.size() / (tokens + 1));
+            response.setHeader("Content-Type", "text/event-stream").setChunkedBody(body, (int) averageEventBytes);
+            if (config.tokensPerSecond > 0) {
+                long bytesPerTick = Math.max(1, averageEventBytes * config.tokensPerSecond / 20);
+                response.throttleBody(bytesPerTick, 50, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (disconnect) response.setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+        return response;
+    }
+
+    private String word(int index) {
+        return WORDS[index % WORDS.length] + (index % WORDS.length == WORDS.length - 1 ? "" : " ");
+    }
+
+    private String event(String content) {
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            if (config.openAiFormat) {
+                writer.name("choices").beginArray().beginObject()
+                        .name("delta").beginObject().name("content").value(content).endObject()
+                        .endObject().endArray();
+            } else {
+                writer.name("response").value(content);
+            }
+            writer.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    private static boolean isStreamRequest(RecordedRequest request) {
+        Buffer body = request.getBody().clone();
+        try {
+            BufferedSource source = "gzip".equals(request.getHeader("Content-Encoding"))
+                    ? Okio.buffer(new GzipSource(body)) : body;
+            JsonReader reader = new JsonReader(new InputStreamReader(source.inputStream(), StandardCharsets.UTF_8));
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("stream".equals(reader.nextName()) && reader.peek() == JsonToken.BOOLEAN) {
+                    return reader.nextBoolean();
+                }
+                reader.skipValue();
+            }
+            return false;
+        } catch (IOException | IllegalStateException e) {
+            return false;
+        }
+    }
+}
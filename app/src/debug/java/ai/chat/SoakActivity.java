@@ -0,0 +1,69 @@
+package ai.chat;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.ScrollView;
+import android.widget.TextView;
+import androidx.appcompat.app.AppCompatActivity;
+import java.io.File;
+import java.io.IOException;
+
+public class SoakActivity extends AppCompatActivity {
+
+    private static final String TAG = "SoakActivity";
+    private static final String RESULT_FILE = "soak.json";
+
+    private TextView output;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        output = new TextView(this);
+        output.setPadding(24, 24, 24, 24);
+        output.setTextIsSelectable(true);
+        ScrollView scrollView = new ScrollView(this);
+        scrollView.addView(output);
+        setContentView(scrollView);
+
+        output.setText("در حال اجرای آزمون بار...");
+        Thread thread = new Thread(this::runSoak, "soak");
+        thread.start();
+    }
+
+    private void runSoak() {
+        Intent intent = getIntent();
+        MockWorker.Config config = new MockWorker.Config();
+        config.tokensPerResponse = intent.getIntExtra("tokens", config.tokensPerResponse);
+        config.tokensPerSecond = intent.getIntExtra("token_rate", config.tokensPerSecond);
+        config.latencyMs = intent.getLongExtra("latency_ms", config.latencyMs);
+        config.jitterMs = intent.getLongExtra("jitter_ms", config.jitterMs);
+        config.errorRate = intent.getFloatExtra("error_rate", (float) config.errorRate);
+        config.streamRatio = intent.getFloatExtra("stream_ratio", (float) config.streamRatio);
+        config.openAiFormat = intent.getBooleanExtra("openai", config.openAiFormat);
+        int sessions = intent.getIntExtra("sessions", 4);
+        int messages = intent.getIntExtra("messages", 250);
+
+        SoakHarness harness = new SoakHarness(this, config, sessions, messages);
+        String report;
+        try {
+            SoakHarness.Report result = harness.run();
+            report = SoakHarness.format(result);
+            File file = harness.writeJson(result, RESULT_FILE);
+            report += "\n" + file.getAbsolutePath();
+            Log.i(TAG, "Soak results written to " + file.getAbsolutePath());
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Soak run failed: ", e);
+            report = "خطا: " + e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            report = "متوقف شد.";
+        }
+        Log.i(TAG, report);
+        String text = report;
+        mainHandler.post(() -> output.setText(text));
+    }
+}
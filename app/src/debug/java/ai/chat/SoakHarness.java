@@ -0,0 +1,382 @@
+package ai.chat;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
+import android.view.Choreographer;
+import android.view.View;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import com.google.gson.stream.JsonWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.OkHttpClient;
+
+public class SoakHarness implements ChatRequestManager.GenerationListener {
+
+    private static final String DATABASE_NAME = "soak_database";
+    private static final long TIMEOUT_MINUTES = 30;
+    private static final int MAX_UI_MESSAGES = 100;
+
+    private static final MessageAdapter.OnMessageInteractionListener NO_INTERACTION =
+            new MessageAdapter.OnMessageInteractionListener() {
+                @Override
+                public void onMessageLongClick(Message message) {
+                }
+
+                @Override
+                public void onExpandMessage(Message message) {
+                }
+
+                @Override
+                public void onCopyMessage(Message message) {
+                }
+            };
+
+    private final Context context;
+    private final Context uiContext;
+    private final MockWorker.Config workerConfig;
+    private final int sessions;
+    private final int messagesPerSession;
+
+    private final Map<Message, Long> sentAt = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicInteger> remaining = new ConcurrentHashMap<>();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong deltas = new AtomicLong();
+    private final AtomicLong chars = new AtomicLong();
+    private DatabaseScheduler scheduler;
+    private MessageDao messageDao;
+    private ChatRequestManager requestManager;
+    private CountDownLatch done;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Object arrivalsLock = new Object();
+    private final Choreographer.FrameCallback frameCallback = this::doFrame;
+    private long[] arrivals = new long[256];
+    private long[] spareArrivals = new long[256];
+    private int arrivalCount;
+    private RecyclerView recyclerView;
+    private MessageAdapter adapter;
+    private StreamingRenderer renderer;
+    private volatile boolean uiRunning;
+
+    public static class Report {
+        int messages;
+        int failed;
+        int requests;
+        int injectedErrors;
+        long elapsedMs;
+        long deltas;
+        long chars;
+        long allocatedBytes;
+        long gcCount;
+        List<Metrics.Summary> stages;
+
+        double messagesPerSecond() {
+            return messages * 1000.0 / Math.max(1, elapsedMs);
+        }
+
+        double deltasPerSecond() {
+            return deltas * 1000.0 / Math.max(1, elapsedMs);
+        }
+    }
+
+    public SoakHarness(Context context, MockWorker.Config workerConfig, int sessions, int messagesPerSession) {
+        this.context = context.getApplicationContext();
+        this.uiContext = context;
+        this.workerConfig = workerConfig;
+        this.sessions = sessions;
+        this.messagesPerSession = messagesPerSession;
+    }
+
+    public Report run() throws IOException, InterruptedException {
+        context.deleteDatabase(DATABASE_NAME);
+        AppDatabase db = Room.databaseBuilder(context, AppDatabase.class, DATABASE_NAME)
+                .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+                .build();
+        scheduler = new DatabaseScheduler(db);
+        messageDao = db.messageDao();
+        MockWorker worker = new MockWorker(workerConfig);
+        String workerUrl = worker.start();
+
+        try {
+            OkHttpClient httpClient = ChatTransport.getInstance().getClient();
+            ConversationContextBuilder contextBuilder = new ConversationContextBuilder(messageDao,
+                    db.sessionSummaryDao(), ConversationContextBuilder.DEFAULT_TOKEN_BUDGET);
+            ConversationSummarizer summarizer = new ConversationSummarizer(messageDao, db.sessionSummaryDao(),
+                    scheduler, httpClient, workerUrl);
+            ResponseCache responseCache = new ResponseCache(context, scheduler) {
+                @Override
+                public boolean isEnabled() {
+                    return false;
+                }
+            };
+            OutboxDispatcher outbox = new OutboxDispatcher(context, scheduler) {
+                @Override
+                public boolean isOnline() {
+                    return true;
+                }
+            };
+            requestManager = new ChatRequestManager(httpClient, scheduler, contextBuilder,
+                    new StreamCheckpointWriter(messageDao, scheduler), summarizer, responseCache, outbox,
+                    workerUrl, this);
+
+            done = new CountDownLatch(sessions);
+            startUi();
+            try (Metrics.Scope metrics = Metrics.openScope()) {
+                long allocatedBefore = runtimeStat("art.gc.bytes-allocated");
+                long gcBefore = runtimeStat("art.gc.gc-count");
+                long start = SystemClock.elapsedRealtime();
+
+                for (int i = 0; i < sessions; i++) {
+                    long sessionId = db.chatSessionDao().insertSession(new ChatSession("soak " + i));
+                    remaining.put(sessionId, new AtomicInteger(messagesPerSession));
+                    sendNext(sessionId);
+                }
+                if (!done.await(TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                    throw new IllegalStateException("Soak run timed out after " + completed.get() + " messages");
+                }
+
+                Report report = new Report();
+                report.elapsedMs = SystemClock.elapsedRealtime() - start;
+                report.messages = completed.get();
+                report.failed = failed.get();
+                report.requests = worker.getRequestCount();
+                report.injectedErrors = worker.getInjectedErrors();
+                report.deltas = deltas.get();
+                report.chars = chars.get();
+                report.allocatedBytes = runtimeStat("art.gc.bytes-allocated") - allocatedBefore;
+                report.gcCount = runtimeStat("art.gc.gc-count") - gcBefore;
+                report.stages = metrics.snapshot();
+                return report;
+            }
+        } finally {
+            uiRunning = false;
+            worker.shutdown();
+            scheduler.shutdown();
+            db.close();
+            context.deleteDatabase(DATABASE_NAME);
+        }
+    }
+
+    private void sendNext(long sessionId) {
+        int index = messagesPerSession - remaining.get(sessionId).get();
+        Message prompt = new Message(sessionId, "soak prompt " + index + " for session " + sessionId,
+                Message.TYPE_USER);
+        Message placeholder = new Message(sessionId, "...", Message.TYPE_AI);
+        placeholder.setStatus(Message.STATUS_STREAMING);
+
+        scheduler.write(() -> messageDao.appendExchange(prompt, placeholder));
+        scheduler.readAfterWrites(DatabaseScheduler.PRIORITY_UI, () -> {
+            Message shownPrompt = prompt.copy();
+            Message shownPlaceholder = placeholder.copy();
+            mainHandler.post(() -> showExchange(shownPrompt, shownPlaceholder));
+            sentAt.put(placeholder, SystemClock.elapsedRealtimeNanos());
+            if (!requestManager.send(prompt, placeholder)) {
+                sentAt.remove(placeholder);
+                failed.incrementAndGet();
+                onExchangeDone(sessionId);
+            }
+        });
+    }
+
+    // The UI stage runs the app's own renderer and adapter on the main looper. The RecyclerView is never
+    // attached to a window, so each frame measures and lays it out by hand, which binds the changed rows.
+    private void startUi() throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(1);
+        mainHandler.post(() -> {
+            recyclerView = new RecyclerView(uiContext);
+            recyclerView.setLayoutManager(new LinearLayoutManager(uiContext));
+            adapter = new MessageAdapter(uiContext, NO_INTERACTION);
+            recyclerView.setAdapter(adapter);
+            renderer = new StreamingRenderer(recyclerView, adapter);
+            uiRunning = true;
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+            ready.countDown();
+        });
+        ready.await();
+    }
+
+    private void doFrame(long frameTimeNanos) {
+        if (!uiRunning) return;
+        long[] frameArrivals;
+        int count;
+        synchronized (arrivalsLock) {
+            frameArrivals = arrivals;
+            count = arrivalCount;
+            arrivals = spareArrivals;
+            arrivalCount = 0;
+        }
+
+        renderer.doFrame(frameTimeNanos);
+        DisplayMetrics display = uiContext.getResources().getDisplayMetrics();
+        recyclerView.measure(View.MeasureSpec.makeMeasureSpec(display.widthPixels, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(display.heightPixels, View.MeasureSpec.EXACTLY));
+        recyclerView.layout(0, 0, display.widthPixels, display.heightPixels);
+
+        long drawnAt = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < count; i++) {
+            Metrics.record("soak.ui", drawnAt - frameArrivals[i]);
+        }
+        spareArrivals = frameArrivals;
+        Choreographer.getInstance().postFrameCallback(frameCallback);
+    }
+
+    private void showExchange(Message prompt, Message placeholder) {
+        List<Message> currentList = new ArrayList<>(adapter.getLatestList());
+        currentList.add(prompt);
+        currentList.add(placeholder);
+        if (currentList.size() > MAX_UI_MESSAGES) {
+            currentList = new ArrayList<>(currentList.subList(currentList.size() - MAX_UI_MESSAGES,
+                    currentList.size()));
+        }
+        adapter.submitList(currentList);
+        recyclerView.scrollToPosition(currentList.size() - 1);
+    }
+
+    private void showFinished(Message placeholder, String text, boolean cached) {
+        renderer.finish(placeholder);
+        int position = adapter.latestPositionOf(placeholder);
+        if (position < 0) return;
+        int chunkCount = Message.chunkCount(text.length());
+        List<Message> messages = new ArrayList<>(adapter.getLatestList());
+        Message finished = messages.get(position).copy();
+        finished.setText(chunkCount == 0 ? text : Message.preview(text));
+        finished.setStatus(Message.STATUS_COMPLETE);
+        finished.setCached(cached);
+        finished.setChunkCount(chunkCount);
+        messages.set(position, finished);
+        adapter.submitList(messages);
+    }
+
+    private void onExchangeDone(long sessionId) {
+        if (remaining.get(sessionId).decrementAndGet() > 0) {
+            sendNext(sessionId);
+        } else {
+            done.countDown();
+        }
+    }
+
+    @Override
+    public void onGenerationStarted(long sessionId) {
+    }
+
+    @Override
+    public void onGenerationDelta(long sessionId, Message placeholder, String delta) {
+        deltas.incrementAndGet();
+        chars.addAndGet(delta.length());
+        renderer.append(placeholder, delta);
+        long arrivedAt = SystemClock.elapsedRealtimeNanos();
+        synchronized (arrivalsLock) {
+            if (arrivalCount == arrivals.length) arrivals = Arrays.copyOf(arrivals, arrivalCount * 2);
+            arrivals[arrivalCount++] = arrivedAt;
+        }
+    }
+
+    @Override
+    public void onGenerationQueued(long sessionId, Message placeholder) {
+        sentAt.remove(placeholder);
+        failed.incrementAndGet();
+        onExchangeDone(sessionId);
+    }
+
+    @Override
+    public void onGenerationFinished(long sessionId, Message placeholder, String text, boolean cached) {
+        Long sent = sentAt.remove(placeholder);
+        long finishedAt = SystemClock.elapsedRealtimeNanos();
+        if (sent != null) Metrics.record("soak.response", finishedAt - sent);
+        if (text.startsWith("خطا")) failed.incrementAndGet();
+        mainHandler.post(() -> showFinished(placeholder, text, cached));
+
+        scheduler.readAfterWrites(DatabaseScheduler.PRIORITY_BACKGROUND, () -> {
+            long persistedAt = SystemClock.elapsedRealtimeNanos();
+            Metrics.record("soak.persist", persistedAt - finishedAt);
+            if (sent != null) Metrics.record("soak.end_to_end", persistedAt - sent);
+            completed.incrementAndGet();
+            onExchangeDone(sessionId);
+        });
+    }
+
+    private static long runtimeStat(String name) {
+        String value = Debug.getRuntimeStat(name);
+        if (value == null) return 0;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public File writeJson(Report report, String fileName) throws IOException {
+        File file = new File(context.getExternalFilesDir(null), fileName);
+        try (JsonWriter writer = new JsonWriter(new FileWriter(file))) {
+            writer.setIndent("  ");
+            writer.beginObject();
+            writer.name("timestamp").value(System.currentTimeMillis());
+            writer.name("device").value(Build.MODEL);
+            writer.name("sdk").value(Build.VERSION.SDK_INT);
+            writer.name("config").beginObject();
+            writer.name("sessions").value(sessions);
+            writer.name("messagesPerSession").value(messagesPerSession);
+            writer.name("tokensPerResponse").value(workerConfig.tokensPerResponse);
+            writer.name("tokensPerSecond").value(workerConfig.tokensPerSecond);
+            writer.name("latencyMs").value(workerConfig.latencyMs);
+            writer.name("jitterMs").value(workerConfig.jitterMs);
+            writer.name("errorRate").value(workerConfig.errorRate);
+            writer.name("streamRatio").value(workerConfig.streamRatio);
+            writer.name("openAiFormat").value(workerConfig.openAiFormat);
+            writer.endObject();
+            writer.name("messages").value(report.messages);
+            writer.name("failed").value(report.failed);
+            writer.name("requests").value(report.requests);
+            writer.name("injectedErrors").value(report.injectedErrors);
+            writer.name("elapsedMs").value(report.elapsedMs);
+            writer.name("messagesPerSecond").value(report.messagesPerSecond());
+            writer.name("deltasPerSecond").value(report.deltasPerSecond());
+            writer.name("chars").value(report.chars);
+            writer.name("allocatedBytes").value(report.allocatedBytes);
+            writer.name("gcCount").value(report.gcCount);
+            writer.name("stages").beginArray();
+            for (Metrics.Summary summary : report.stages) {
+                writer.beginObject();
+                writer.name("name").value(summary.name);
+                writer.name("count").value(summary.count);
+                writer.name("p50Us").value(summary.p50Us);
+                writer.name("p90Us").value(summary.p90Us);
+                writer.name("p99Us").value(summary.p99Us);
+                writer.name("maxUs").value(summary.maxUs);
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        return file;
+    }
+
+    public static String format(Report report) {
+        return "پیام‌ها: " + report.messages + " (ناموفق: " + report.failed + ")\n"
+                + "درخواست‌ها: " + report.requests + " (خطای تزریقی: " + report.injectedErrors + ")\n"
+                + String.format(Locale.US, "%.1f msg/s, %.0f tokens/s, %d ms\n",
+                report.messagesPerSecond(), report.deltasPerSecond(), report.elapsedMs)
+                + "تخصیص حافظه: " + report.allocatedBytes / 1024 + " KB, GC: " + report.gcCount + "\n\n"
+                + Metrics.format(report.stages);
+    }
+}
@@ -1,23 +1,135 @@
 package ai.chat;
 
 import android.content.Context;
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
-@Database(entities = {Message.class, ChatSession.class}, version = 2, exportSchema = false)
+@Database(entities = {Message.class, MessageFts.class, ChatSession.class, SessionSummary.class, OutboxEntry.class, CachedResponse.class, MessageChunk.class}, version = 12, exportSchema = false)
 public abstract class AppDatabase extends RoomDatabase {
     public abstract MessageDao messageDao();
     public abstract ChatSessionDao chatSessionDao();
+    public abstract MessageSearchDao messageSearchDao();
+    public abstract SessionSummaryDao sessionSummaryDao();
+    public abstract OutboxDao outboxDao();
+    public abstract ResponseCacheDao responseCacheDao();
 
     private static volatile AppDatabase INSTANCE;
 
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("DROP INDEX IF EXISTS `index_messages_session_id`");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_messages_session_id_id` ON `messages` (`session_id`, `id`)");
+        }
+    };
+
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `messages` ADD COLUMN `status` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `messages_fts` USING FTS4(`text` TEXT, tokenize=unicode61, content=`messages`)");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_messages_fts_BEFORE_UPDATE BEFORE UPDATE ON `messages` BEGIN DELETE FROM `messages_fts` WHERE `docid`=OLD.`rowid`; END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_messages_fts_BEFORE_DELETE BEFORE DELETE ON `messages` BEGIN DELETE FROM `messages_fts` WHERE `docid`=OLD.`rowid`; END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_messages_fts_AFTER_UPDATE AFTER UPDATE ON `messages` BEGIN INSERT INTO `messages_fts`(`docid`, `text`) VALUES (NEW.`rowid`, NEW.`text`); END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_messages_fts_AFTER_INSERT AFTER INSERT ON `messages` BEGIN INSERT INTO `messages_fts`(`docid`, `text`) VALUES (NEW.`rowid`, NEW.`text`); END");
+            database.execSQL("INSERT INTO `messages_fts`(`messages_fts`) VALUES ('rebuild')");
+        }
+    };
+
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `session_summaries` (`session_id` INTEGER NOT NULL, `summary` TEXT, "
+                    + "`last_message_id` INTEGER NOT NULL, `updated_at` INTEGER NOT NULL, PRIMARY KEY(`session_id`), "
+                    + "FOREIGN KEY(`session_id`) REFERENCES `chat_sessions`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+        }
+    };
+
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `outbox` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`session_id` INTEGER NOT NULL, `prompt_message_id` INTEGER NOT NULL, "
+                    + "`placeholder_message_id` INTEGER NOT NULL, `created_at` INTEGER NOT NULL, "
+                    + "FOREIGN KEY(`session_id`) REFERENCES `chat_sessions`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_outbox_session_id_id` ON `outbox` (`session_id`, `id`)");
+        }
+    };
+
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `response_cache` (`key` TEXT NOT NULL, `response` TEXT, "
+                    + "`created_at` INTEGER NOT NULL, `last_access` INTEGER NOT NULL, `size` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`key`))");
+            database.execSQL("ALTER TABLE `messages` ADD COLUMN `cached` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `message_chunks` (`message_id` INTEGER NOT NULL, "
+                    + "`seq` INTEGER NOT NULL, `text` TEXT, PRIMARY KEY(`message_id`, `seq`), "
+                    + "FOREIGN KEY(`message_id`) REFERENCES `messages`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+            database.execSQL("ALTER TABLE `messages` ADD COLUMN `chunk_count` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `messages` ADD COLUMN `body` BLOB");
+            database.execSQL("ALTER TABLE `messages` ADD COLUMN `codec` INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("ALTER TABLE `message_chunks` ADD COLUMN `body` BLOB");
+            database.execSQL("ALTER TABLE `message_chunks` ADD COLUMN `codec` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("DROP TRIGGER IF EXISTS room_fts_content_sync_messages_fts_BEFORE_UPDATE");
+            database.execSQL("DROP TRIGGER IF EXISTS room_fts_content_sync_messages_fts_BEFORE_DELETE");
+            database.execSQL("DROP TRIGGER IF EXISTS room_fts_content_sync_messages_fts_AFTER_UPDATE");
+            database.execSQL("DROP TRIGGER IF EXISTS room_fts_content_sync_messages_fts_AFTER_INSERT");
+            database.execSQL("DROP TABLE IF EXISTS `messages_fts`");
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `messages_fts` USING FTS4(`text` TEXT, tokenize=unicode61)");
+            database.execSQL("INSERT INTO `messages_fts`(`docid`, `text`) SELECT `id`, `text` FROM `messages` "
+                    + "WHERE `codec` = 0 AND `chunk_count` = 0 AND `status` = 0");
+            database.execSQL("ALTER TABLE `messages` ADD COLUMN `token_count` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    static final Migration MIGRATION_11_12 = new Migration(11, 12) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `chat_sessions` ADD COLUMN `import_key` TEXT");
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_chat_sessions_import_key` "
+                    + "ON `chat_sessions` (`import_key`)");
+        }
+    };
+
     public static AppDatabase getDatabase(final Context context) {
         if (INSTANCE == null) {
             synchronized (AppDatabase.class) {
                 if (INSTANCE == null) {
                     INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
                                     AppDatabase.class, "chat_database")
+                            .addMigrations(MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7,
+                                    MIGRATION_7_8, MIGRATION_8_9, MIGRATION_9_10, MIGRATION_10_11,
+                                    MIGRATION_11_12)
+                            .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
                             .fallbackToDestructiveMigration()
                             .build();
                 }
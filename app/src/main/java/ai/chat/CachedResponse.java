@@ -0,0 +1,44 @@
+package ai.chat;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+@Entity(tableName = "response_cache")
+public class CachedResponse {
+
+    @PrimaryKey
+    @NonNull
+    public String key;
+
+    private String response;
+
+    @ColumnInfo(name = "created_at")
+    private long createdAt;
+
+    @ColumnInfo(name = "last_access")
+    private long lastAccess;
+
+    private int size;
+
+    public CachedResponse(@NonNull String key, String response) {
+        this.key = key;
+        this.response = response;
+        this.createdAt = System.currentTimeMillis();
+        this.lastAccess = createdAt;
+        this.size = response.length();
+    }
+
+    @NonNull
+    public String getKey() { return key; }
+    public void setKey(@NonNull String key) { this.key = key; }
+    public String getResponse() { return response; }
+    public void setResponse(String response) { this.response = response; }
+    public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+    public long getLastAccess() { return lastAccess; }
+    public void setLastAccess(long lastAccess) { this.lastAccess = lastAccess; }
+    public int getSize() { return size; }
+    public void setSize(int size) { this.size = size; }
+}
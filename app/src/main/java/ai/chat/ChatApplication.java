@@ -0,0 +1,23 @@
+package ai.chat;
+
+import android.app.Application;
+import android.os.SystemClock;
+
+public class ChatApplication extends Application {
+
+    private static long startedAtNanos;
+
+    @Override
+    public void onCreate() {
+        startedAtNanos = SystemClock.elapsedRealtimeNanos();
+        super.onCreate();
+        try (Metrics.Timer ignored = Metrics.time("startup.app_create")) {
+            StartupPrefetch.getInstance(this).start();
+            MaintenanceScheduler.getInstance(this);
+        }
+    }
+
+    public static long getStartedAtNanos() {
+        return startedAtNanos;
+    }
+}
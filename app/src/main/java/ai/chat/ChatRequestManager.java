@@ -0,0 +1,404 @@
+package ai.chat;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import com.google.gson.JsonSyntaxException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+public class ChatRequestManager implements MessagePager.LiveTextSource {
+
+    private static final String TAG = "ChatRequestManager";
+    private static final int MAX_RETRIES = 3;
+    private static final long RETRY_BASE_DELAY_MS = 1000;
+    private static final long RETRY_MIN_DELAY_MS = 250;
+
+    private static volatile ChatRequestManager INSTANCE;
+
+    private final OkHttpClient httpClient;
+    private final DatabaseScheduler scheduler;
+    private final MessageDao messageDao;
+    private final OutboxDao outboxDao;
+    private final OutboxDispatcher outbox;
+    private final ConversationContextBuilder contextBuilder;
+    private final StreamCheckpointWriter checkpointWriter;
+    private final ConversationSummarizer summarizer;
+    private final ResponseCache responseCache;
+    private final String workerUrl;
+    private volatile GenerationListener listener;
+    private final Handler retryHandler = new Handler(Looper.getMainLooper());
+    private final Random random = new Random();
+    private final Map<Long, Generation> generations = new HashMap<>();
+
+    public interface GenerationListener {
+        void onGenerationStarted(long sessionId);
+        void onGenerationDelta(long sessionId, Message placeholder, String delta);
+        void onGenerationQueued(long sessionId, Message placeholder);
+        void onGenerationFinished(long sessionId, Message placeholder, String text, boolean cached);
+    }
+
+    private static final GenerationListener NO_LISTENER = new GenerationListener() {
+        @Override
+        public void onGenerationStarted(long sessionId) {
+        }
+
+        @Override
+        public void onGenerationDelta(long sessionId, Message placeholder, String delta) {
+        }
+
+        @Override
+        public void onGenerationQueued(long sessionId, Message placeholder) {
+        }
+
+        @Override
+        public void onGenerationFinished(long sessionId, Message placeholder, String text, boolean cached) {
+        }
+    };
+
+    private static class Generation {
+        final long sessionId;
+        final String prompt;
+        final Message placeholder;
+        final StringBuilder text = new StringBuilder();
+        final long startedAt = SystemClock.elapsedRealtimeNanos();
+        final Metrics.Span total = Metrics.span("generation.total");
+        Request request;
+        Call call;
+        Runnable pendingRetry;
+        String cacheKey;
+        boolean cached;
+        int attempt;
+        int storedChunks;
+        boolean finishing;
+        volatile boolean cancelled;
+
+        Generation(long sessionId, String prompt, Message placeholder) {
+            this.sessionId = sessionId;
+            this.prompt = prompt;
+            this.placeholder = placeholder;
+        }
+    }
+
+    public static ChatRequestManager getInstance(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (ChatRequestManager.class) {
+                if (INSTANCE == null) {
+                    DatabaseScheduler scheduler = DatabaseScheduler.getInstance(context);
+                    AppDatabase db = scheduler.getDatabase();
+                    OkHttpClient httpClient = ChatTransport.getInstance().getClient();
+                    OutboxDispatcher outbox = OutboxDispatcher.getInstance(context);
+                    ChatRequestManager manager = new ChatRequestManager(httpClient, scheduler,
+                            new ConversationContextBuilder(db.messageDao(), db.sessionSummaryDao(),
+                                    ConversationContextBuilder.DEFAULT_TOKEN_BUDGET),
+                            new StreamCheckpointWriter(db.messageDao(), scheduler),
+                            new ConversationSummarizer(db.messageDao(), db.sessionSummaryDao(), scheduler, httpClient,
+                                    BuildConfig.WORKER_URL),
+                            ResponseCache.getInstance(context), outbox, BuildConfig.WORKER_URL, NO_LISTENER);
+                    outbox.start(manager);
+                    INSTANCE = manager;
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    ChatRequestManager(OkHttpClient httpClient, DatabaseScheduler scheduler,
+                       ConversationContextBuilder contextBuilder, StreamCheckpointWriter checkpointWriter,
+                       ConversationSummarizer summarizer, ResponseCache responseCache, OutboxDispatcher outbox,
+                       String workerUrl, GenerationListener listener) {
+        this.httpClient = httpClient;
+        this.scheduler = scheduler;
+        this.messageDao = scheduler.getDatabase().messageDao();
+        this.outboxDao = scheduler.getDatabase().outboxDao();
+        this.outbox = outbox;
+        this.contextBuilder = contextBuilder;
+        this.checkpointWriter = checkpointWriter;
+        this.summarizer = summarizer;
+        this.responseCache = responseCache;
+        this.workerUrl = workerUrl;
+        this.listener = listener;
+    }
+
+    public void attach(GenerationListener listener) {
+        this.listener = listener;
+    }
+
+    public void detach(GenerationListener listener) {
+        if (this.listener == listener) this.listener = NO_LISTENER;
+    }
+
+    public boolean isGenerating(long sessionId) {
+        synchronized (generations) {
+            return generations.containsKey(sessionId);
+        }
+    }
+
+    @Override
+    public String getLiveText(int messageId) {
+        synchronized (generations) {
+            for (Generation generation : generations.values()) {
+                if (generation.placeholder.getId() != messageId) continue;
+                synchronized (generation) {
+                    return generation.text.toString();
+                }
+            }
+        }
+        return null;
+    }
+
+    public int activeCount() {
+        synchronized (generations) {
+            return generations.size();
+        }
+    }
+
+    // The outbox check in the send write catches queued prompts; this one stops a repeated tap from
+    // cancelling the generation it just started.
+    public boolean isDuplicate(long sessionId, String prompt) {
+        synchronized (generations) {
+            Generation generation = generations.get(sessionId);
+            return generation != null && generation.prompt.equals(prompt);
+        }
+    }
+
+    public boolean send(Message prompt, Message placeholder) {
+        long sessionId = prompt.getSessionId();
+        Generation generation;
+        synchronized (generations) {
+            if (generations.containsKey(sessionId)) return false;
+            generation = new Generation(sessionId, prompt.getText(), placeholder);
+            generations.put(sessionId, generation);
+        }
+        listener.onGenerationStarted(sessionId);
+
+        scheduler.readAfterWrites(DatabaseScheduler.PRIORITY_UI, () -> {
+            List<WorkerCodec.Turn> messages;
+            try (Metrics.Timer ignored = Metrics.time("generation.context_build")) {
+                messages = contextBuilder.build(sessionId, prompt.getId(), prompt.getText());
+            }
+            if (responseCache.isEnabled()) {
+                generation.cacheKey = WorkerCodec.sha256(messages);
+                String cached = responseCache.lookup(generation.cacheKey);
+                if (cached != null) {
+                    generation.cached = true;
+                    finish(generation, cached);
+                    return;
+                }
+            }
+
+            generation.request = new Request.Builder()
+                    .url(workerUrl)
+                    .header("Accept", "text/event-stream, application/x-ndjson, application/json")
+                    .post(WorkerCodec.requestBody(messages, true))
+                    .build();
+            execute(generation);
+        });
+        return true;
+    }
+
+    public void cancel(long sessionId) {
+        Generation generation;
+        synchronized (generations) {
+            generation = generations.get(sessionId);
+            if (generation == null || generation.finishing) return;
+        }
+
+        String partial;
+        synchronized (generation) {
+            generation.cancelled = true;
+            if (generation.call != null) generation.call.cancel();
+            if (generation.pendingRetry != null) retryHandler.removeCallbacks(generation.pendingRetry);
+            partial = generation.text.toString();
+        }
+        finish(generation, partial.isEmpty() ? "(متوقف شد)" : partial);
+    }
+
+    private void execute(Generation generation) {
+        Call call = httpClient.newCall(generation.request);
+        synchronized (generation) {
+            if (generation.cancelled) return;
+            generation.call = call;
+            generation.pendingRetry = null;
+        }
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                if (generation.cancelled) return;
+                Log.e(TAG, "Request failed: ", e);
+                if (!outbox.isOnline()) {
+                    defer(generation);
+                    return;
+                }
+                if (scheduleRetry(generation)) return;
+                finish(generation, "خطا در ارتباط با سرور: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                try (ResponseBody responseBody = response.body()) {
+                    if (!response.isSuccessful() || responseBody == null) {
+                        if (isRetryable(response.code()) && scheduleRetry(generation)) return;
+                        finish(generation, "خطا: " + response.code());
+                        return;
+                    }
+                    handleStreamingResponse(generation, responseBody);
+                } catch (IOException e) {
+                    if (generation.cancelled) return;
+                    Log.e(TAG, "Stream interrupted: ", e);
+                    if (generation.text.length() == 0 && !outbox.isOnline()) {
+                        defer(generation);
+                        return;
+                    }
+                    if (generation.text.length() == 0 && scheduleRetry(generation)) return;
+                    finish(generation, generation.text.length() == 0
+                            ? "خطا در ارتباط با سرور: " + e.getMessage()
+                            : generation.text.toString());
+                }
+            }
+        });
+    }
+
+    private static boolean isRetryable(int code) {
+        return code == 408 || code == 429 || code >= 500;
+    }
+
+    private boolean scheduleRetry(Generation generation) {
+        synchronized (generation) {
+            if (generation.cancelled || generation.attempt >= MAX_RETRIES) return false;
+            long ceiling = RETRY_BASE_DELAY_MS << generation.attempt;
+            long delay = RETRY_MIN_DELAY_MS + (long) (random.nextDouble() * ceiling);
+            generation.attempt++;
+            generation.pendingRetry = () -> execute(generation);
+            retryHandler.postDelayed(generation.pendingRetry, delay);
+            Log.w(TAG, "Retrying request in " + delay + "ms (attempt " + generation.attempt + ")");
+            return true;
+        }
+    }
+
+    private void handleStreamingResponse(Generation generation, ResponseBody responseBody) throws IOException {
+        MediaType contentType = responseBody.contentType();
+        String subtype = contentType != null ? contentType.subtype() : "";
+        try {
+            if ("event-stream".equals(subtype) || "x-ndjson".equals(subtype)) {
+                readStreamedResponse(generation, responseBody.source());
+            } else {
+                String aiResponse = WorkerCodec.readResponse(responseBody.charStream());
+                if (aiResponse == null) {
+                    finish(generation, "خطا در پردازش پاسخ.");
+                } else {
+                    succeed(generation, aiResponse);
+                }
+            }
+        } catch (JsonSyntaxException | IllegalStateException e) {
+            Log.e(TAG, "Error parsing response: ", e);
+            finish(generation, generation.text.length() == 0 ? "خطا در پردازش پاسخ." : generation.text.toString());
+        }
+    }
+
+    private void readStreamedResponse(Generation generation, BufferedSource source) throws IOException {
+        long parseNanos = 0;
+        WorkerCodec.EventStream events = new WorkerCodec.EventStream(source);
+        while (events.hasNext()) {
+            long parseStart = SystemClock.elapsedRealtimeNanos();
+            String token = events.next();
+            parseNanos += SystemClock.elapsedRealtimeNanos() - parseStart;
+            if (token == null || token.isEmpty()) continue;
+            synchronized (generation) {
+                if (generation.cancelled) return;
+                if (generation.text.length() == 0) {
+                    Metrics.record("generation.first_token", SystemClock.elapsedRealtimeNanos() - generation.startedAt);
+                }
+                generation.text.append(token);
+                checkpointWriter.onProgress(generation.placeholder, generation.text);
+            }
+            listener.onGenerationDelta(generation.sessionId, generation.placeholder, token);
+        }
+        Metrics.record("generation.parse", parseNanos);
+
+        if (generation.text.length() == 0) {
+            finish(generation, "خطا در پردازش پاسخ.");
+        } else {
+            succeed(generation, generation.text.toString());
+        }
+    }
+
+    private boolean release(Generation generation) {
+        synchronized (generations) {
+            if (generations.get(generation.sessionId) != generation) return false;
+            generations.remove(generation.sessionId);
+        }
+        generation.total.end();
+        generation.storedChunks = checkpointWriter.complete(generation.placeholder);
+        return true;
+    }
+
+    private void defer(Generation generation) {
+        if (!release(generation)) return;
+        Log.w(TAG, "Offline, keeping prompt in outbox for session " + generation.sessionId);
+        listener.onGenerationQueued(generation.sessionId, generation.placeholder);
+    }
+
+    private void succeed(Generation generation, String text) {
+        if (generation.cacheKey != null && !generation.cancelled) {
+            responseCache.store(generation.cacheKey, text);
+        }
+        finish(generation, text);
+    }
+
+    private void finish(Generation generation, String text) {
+        synchronized (generations) {
+            if (generations.get(generation.sessionId) != generation || generation.finishing) return;
+            generation.finishing = true;
+        }
+        generation.total.end();
+        int storedChunks = checkpointWriter.complete(generation.placeholder);
+
+        Message placeholder = generation.placeholder;
+        boolean cached = generation.cached;
+        // The generation stays registered until the final text and the outbox removal commit, so a drain
+        // in between cannot send the same prompt again.
+        scheduler.write(() -> {
+            if (placeholder.getId() != 0) {
+                messageDao.storeText(placeholder.getId(), text, Message.STATUS_COMPLETE, cached, storedChunks);
+                outboxDao.deleteForPlaceholder(placeholder.getId());
+            }
+        }, new DatabaseScheduler.WriteCallback() {
+            @Override
+            public void onWriteCommitted() {
+                finished(generation, text);
+            }
+
+            @Override
+            public void onWriteFailed(RuntimeException e) {
+                Log.e(TAG, "Failed to store response for session " + generation.sessionId, e);
+                finished(generation, text);
+            }
+        });
+    }
+
+    private void finished(Generation generation, String text) {
+        long sessionId = generation.sessionId;
+        synchronized (generations) {
+            if (generations.get(sessionId) == generation) generations.remove(sessionId);
+        }
+        scheduler.readAfterWrites(DatabaseScheduler.PRIORITY_BACKGROUND, () -> summarizer.maybeSummarize(sessionId));
+        listener.onGenerationFinished(sessionId, generation.placeholder, text, generation.cached);
+        outbox.drain();
+    }
+}
@@ -1,9 +1,11 @@
 package ai.chat;
 
+import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
-@Entity(tableName = "chat_sessions")
+@Entity(tableName = "chat_sessions", indices = {@Index(value = "import_key", unique = true)})
 public class ChatSession {
     @PrimaryKey(autoGenerate = true)
     public long id;
@@ -11,6 +13,9 @@ public class ChatSession {
     private String title;
     private long lastModified;
 
+    @ColumnInfo(name = "import_key")
+    private String importKey;
+
     public ChatSession(String title) {
         this.title = title;
         this.lastModified = System.currentTimeMillis();
@@ -22,5 +27,7 @@ public class ChatSession {
     public void setTitle(String title) { this.title = title; }
     public long getLastModified() { return lastModified; }
     public void setLastModified(long lastModified) { this.lastModified = lastModified; }
+    public String getImportKey() { return importKey; }
+    public void setImportKey(String importKey) { this.importKey = importKey; }
 }
 
@@ -1,30 +1,42 @@
 package ai.chat;
 
+import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
 import java.util.Locale;
+import java.util.TimeZone;
 
-public class ChatSessionAdapter extends RecyclerView.Adapter<ChatSessionAdapter.SessionViewHolder> {
+public class ChatSessionAdapter extends ListAdapter<ChatSession, ChatSessionAdapter.SessionViewHolder> {
+
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final int TIMESTAMP_CACHE_SIZE = 512;
 
-    private final List<ChatSession> sessions;
     private final OnSessionInteractionListener listener;
     private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd HH:mm", Locale.getDefault());
+    private final LruCache<Long, String> formattedTimestamps = new LruCache<>(TIMESTAMP_CACHE_SIZE);
 
     public interface OnSessionInteractionListener {
         void onSessionClick(ChatSession session);
         void onSessionLongClick(ChatSession session);
     }
 
-    public ChatSessionAdapter(List<ChatSession> sessions, OnSessionInteractionListener listener) {
-        this.sessions = sessions;
+    public ChatSessionAdapter(OnSessionInteractionListener listener) {
+        super(DIFF_CALLBACK);
         this.listener = listener;
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getId();
     }
 
     @NonNull
@@ -36,13 +48,25 @@ public class ChatSessionAdapter extends RecyclerView.Adapter<ChatSessionAdapter.
 
     @Override
     public void onBindViewHolder(@NonNull SessionViewHolder holder, int position) {
-        ChatSession session = sessions.get(position);
+        ChatSession session = getItem(position);
         holder.bind(session, listener);
     }
 
-    @Override
-    public int getItemCount() {
-        return sessions.size();
+    // Formatted strings depend on the time zone, so they are rebuilt when the configuration changes.
+    public void onConfigurationChanged() {
+        dateFormat.setTimeZone(TimeZone.getDefault());
+        formattedTimestamps.evictAll();
+        notifyItemRangeChanged(0, getItemCount());
+    }
+
+    private String formatTimestamp(long timestamp) {
+        long minute = timestamp / MINUTE_MS;
+        String formatted = formattedTimestamps.get(minute);
+        if (formatted == null) {
+            formatted = dateFormat.format(new Date(minute * MINUTE_MS));
+            formattedTimestamps.put(minute, formatted);
+        }
+        return formatted;
     }
 
     class SessionViewHolder extends RecyclerView.ViewHolder {
@@ -57,7 +81,7 @@ public class ChatSessionAdapter extends RecyclerView.Adapter<ChatSessionAdapter.
 
         public void bind(final ChatSession session, final OnSessionInteractionListener listener) {
             title.setText(session.getTitle());
-            timestamp.setText(dateFormat.format(new Date(session.getLastModified())));
+            timestamp.setText(formatTimestamp(session.getLastModified()));
 
             itemView.setOnClickListener(v -> listener.onSessionClick(session));
 
@@ -67,4 +91,18 @@ public class ChatSessionAdapter extends RecyclerView.Adapter<ChatSessionAdapter.
             });
         }
     }
+
+    private static final DiffUtil.ItemCallback<ChatSession> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<ChatSession>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull ChatSession oldItem, @NonNull ChatSession newItem) {
+                    return oldItem.getId() == newItem.getId();
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull ChatSession oldItem, @NonNull ChatSession newItem) {
+                    return oldItem.getLastModified() == newItem.getLastModified()
+                            && oldItem.getTitle().equals(newItem.getTitle());
+                }
+            };
 }
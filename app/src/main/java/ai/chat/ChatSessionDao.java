@@ -4,6 +4,7 @@ import androidx.room.Dao;
 import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.Query;
+import androidx.room.Transaction;
 import androidx.room.Update;
 import java.util.List;
 
@@ -15,9 +16,27 @@ public interface ChatSessionDao {
     @Query("SELECT * FROM chat_sessions ORDER BY lastModified DESC")
     List<ChatSession> getAllSessions();
 
+    @Query("SELECT * FROM chat_sessions WHERE id > :afterId AND id <= :maxId ORDER BY id ASC LIMIT :limit")
+    List<ChatSession> getSessionsAfter(long afterId, long maxId, int limit);
+
+    @Query("SELECT COALESCE(MAX(id), 0) FROM chat_sessions")
+    long getMaxSessionId();
+
+    @Query("SELECT EXISTS(SELECT 1 FROM chat_sessions WHERE import_key = :importKey)")
+    boolean isImported(String importKey);
+
     @Update
     void updateSession(ChatSession session);
 
+    @Query("DELETE FROM messages_fts WHERE docid IN (SELECT id FROM messages WHERE session_id = :sessionId)")
+    void unindexSession(long sessionId);
+
     @Delete
-    void deleteSession(ChatSession session);
+    void deleteSessionRow(ChatSession session);
+
+    @Transaction
+    default void deleteSession(ChatSession session) {
+        unindexSession(session.getId());
+        deleteSessionRow(session);
+    }
 }
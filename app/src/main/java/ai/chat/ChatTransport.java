@@ -0,0 +1,229 @@
+package ai.chat;
+
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+public class ChatTransport {
+
+    private static final String TAG = "ChatTransport";
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final long PREWARM_INTERVAL_MS = 30_000;
+    private static final long GZIP_MIN_BYTES = 1024;
+    private static final long REJECTION_PEEK_BYTES = 4096;
+
+    private static volatile ChatTransport INSTANCE;
+
+    private final ConnectionPool connectionPool;
+    private final OkHttpClient client;
+    private volatile boolean compressionEnabled = true;
+    private long lastPrewarm;
+
+    public static ChatTransport getInstance() {
+        if (INSTANCE == null) {
+            synchronized (ChatTransport.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new ChatTransport();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private ChatTransport() {
+        connectionPool = new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES);
+        client = new OkHttpClient.Builder()
+                .connectionPool(connectionPool)
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(30, TimeUnit.SECONDS)
+                .writeTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(120, TimeUnit.SECONDS)
+                .pingInterval(30, TimeUnit.SECONDS)
+                .addInterceptor(new GzipRequestInterceptor())
+                .eventListenerFactory(call -> new TimingListener())
+                .build();
+    }
+
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    public void prewarm(String url) {
+        synchronized (this) {
+            long now = SystemClock.uptimeMillis();
+            if (lastPrewarm != 0 && now - lastPrewarm < PREWARM_INTERVAL_MS) return;
+            lastPrewarm = now;
+        }
+        if (connectionPool.idleConnectionCount() > 0) return;
+
+        Request request = new Request.Builder().url(url).head().build();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                Log.w(TAG, "Prewarm failed: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                response.close();
+            }
+        });
+    }
+
+    private class GzipRequestInterceptor implements Interceptor {
+        @NonNull
+        @Override
+        public Response intercept(@NonNull Chain chain) throws IOException {
+            Request original = chain.request();
+            RequestBody body = original.body();
+            if (!compressionEnabled || body == null || original.header("Content-Encoding") != null) {
+                return chain.proceed(original);
+            }
+            long length = body.contentLength();
+            if (length >= 0 && length < GZIP_MIN_BYTES) {
+                return chain.proceed(original);
+            }
+
+            Buffer plain = new Buffer();
+            body.writeTo(plain);
+            if (plain.size() < GZIP_MIN_BYTES) {
+                return chain.proceed(original);
+            }
+
+            Request compressed = original.newBuilder()
+                    .header("Content-Encoding", "gzip")
+                    .method(original.method(), gzip(plain, body.contentType()))
+                    .build();
+            Response response = chain.proceed(compressed);
+            if (!rejectsEncoding(response)) {
+                return response;
+            }
+
+            Log.w(TAG, "Worker rejected gzip body (" + response.code() + "), sending uncompressed from now on");
+            compressionEnabled = false;
+            response.close();
+            return chain.proceed(original);
+        }
+
+        // A 400 only counts when it points at the encoding; anything else is a bad request that the
+        // uncompressed body would fail with too.
+        private boolean rejectsEncoding(Response response) throws IOException {
+            if (response.code() == 415) return true;
+            if (response.code() != 400) return false;
+            if (response.header("Accept-Encoding") != null) return true;
+            String body = response.peekBody(REJECTION_PEEK_BYTES).string().toLowerCase(Locale.ROOT);
+            return body.contains("gzip") || body.contains("encoding") || body.contains("decompress");
+        }
+
+        private RequestBody gzip(Buffer plain, MediaType contentType) throws IOException {
+            Buffer buffer = new Buffer();
+            try (BufferedSink sink = Okio.buffer(new GzipSink(buffer))) {
+                sink.writeAll(plain);
+            }
+            return RequestBody.create(buffer.readByteString(), contentType);
+        }
+    }
+
+    private static class TimingListener extends EventListener {
+        private long callStart;
+        private long dnsStart;
+        private long dnsMs = -1;
+        private long connectStart;
+        private long connectMs = -1;
+        private long secureConnectStart;
+        private long tlsMs = -1;
+        private long firstByteMs = -1;
+
+        @Override
+        public void callStart(@NonNull Call call) {
+            callStart = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+            dnsStart = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void dnsEnd(@NonNull Call call, @NonNull String domainName, @NonNull List<InetAddress> addresses) {
+            dnsMs = SystemClock.elapsedRealtime() - dnsStart;
+        }
+
+        @Override
+        public void connectStart(@NonNull Call call, @NonNull InetSocketAddress address, @NonNull Proxy proxy) {
+            connectStart = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void secureConnectStart(@NonNull Call call) {
+            secureConnectStart = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void secureConnectEnd(@NonNull Call call, Handshake handshake) {
+            tlsMs = SystemClock.elapsedRealtime() - secureConnectStart;
+        }
+
+        @Override
+        public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress address, @NonNull Proxy proxy,
+                               Protocol protocol) {
+            connectMs = SystemClock.elapsedRealtime() - connectStart;
+        }
+
+        @Override
+        public void responseHeadersStart(@NonNull Call call) {
+            if (firstByteMs < 0) firstByteMs = SystemClock.elapsedRealtime() - callStart;
+        }
+
+        @Override
+        public void callEnd(@NonNull Call call) {
+            log(call, "ok");
+        }
+
+        @Override
+        public void callFailed(@NonNull Call call, @NonNull IOException ioe) {
+            log(call, "failed");
+        }
+
+        private void log(Call call, String outcome) {
+            long totalMs = SystemClock.elapsedRealtime() - callStart;
+            recordMillis("http.dns", dnsMs);
+            recordMillis("http.connect", connectMs);
+            recordMillis("http.tls", tlsMs);
+            recordMillis("http.ttfb", firstByteMs);
+            recordMillis("http.call." + outcome, totalMs);
+            Log.d(TAG, call.request().method() + " " + outcome
+                    + " dns=" + dnsMs + "ms connect=" + connectMs + "ms tls=" + tlsMs
+                    + "ms ttfb=" + firstByteMs + "ms total=" + totalMs + "ms");
+        }
+
+        private static void recordMillis(String name, long millis) {
+            if (millis >= 0) Metrics.record(name, millis * 1_000_000);
+        }
+    }
+}
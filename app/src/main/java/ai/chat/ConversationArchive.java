@@ -0,0 +1,420 @@
+package ai.chat;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class ConversationArchive {
+
+    public static final String MIME_TYPE = "application/gzip";
+
+    private static final String TAG = "ConversationArchive";
+    private static final int FORMAT_VERSION = 1;
+    private static final int SESSION_PAGE_SIZE = 100;
+    private static final int MESSAGE_PAGE_SIZE = 500;
+    private static final int IMPORT_BATCH_MESSAGES = 1000;
+    private static final int IMPORT_BATCH_CHARS = 1024 * 1024;
+    private static final int MAX_PENDING_BATCHES = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ContentResolver contentResolver;
+    private final DatabaseScheduler scheduler;
+    private final MessageDao messageDao;
+    private final ChatSessionDao chatSessionDao;
+
+    public interface Callback {
+        void onArchiveFinished(Result result);
+        void onArchiveFailed(Exception e);
+    }
+
+    public static class Result {
+        public final int sessions;
+        public final int messages;
+        public final int skippedSessions;
+        public final long elapsedMs;
+
+        Result(int sessions, int messages, int skippedSessions, long elapsedMs) {
+            this.sessions = sessions;
+            this.messages = messages;
+            this.skippedSessions = skippedSessions;
+            this.elapsedMs = elapsedMs;
+        }
+
+        public long messagesPerSecond() {
+            return messages * 1000L / Math.max(1, elapsedMs);
+        }
+    }
+
+    private static class ImportBatch {
+        final List<ArchivedSession> sessions = new ArrayList<>();
+        final List<ArchivedMessage> messages = new ArrayList<>();
+        final List<Long> insertedSessionIds = new ArrayList<>();
+        int chars;
+        int importedMessages;
+        int skippedSessions;
+    }
+
+    private static class ArchivedSession {
+        final long id;
+        final String importKey;
+        final String title;
+        final long lastModified;
+
+        ArchivedSession(long id, String importKey, String title, long lastModified) {
+            this.id = id;
+            this.importKey = importKey;
+            this.title = title;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static class ArchivedMessage {
+        final long sessionId;
+        final int type;
+        final boolean cached;
+        final String text;
+
+        ArchivedMessage(long sessionId, int type, boolean cached, String text) {
+            this.sessionId = sessionId;
+            this.type = type;
+            this.cached = cached;
+            this.text = text;
+        }
+    }
+
+    private static class ImportState {
+        final Map<Long, Long> sessionIds = new HashMap<>();
+        final Semaphore pending = new Semaphore(MAX_PENDING_BATCHES);
+        final List<Long> insertedSessionIds = new ArrayList<>();
+        RuntimeException failure;
+        int sessions;
+        int messages;
+        int skippedSessions;
+        boolean drained;
+
+        void awaitPending() {
+            if (drained) return;
+            pending.acquireUninterruptibly(MAX_PENDING_BATCHES);
+            drained = true;
+        }
+    }
+
+    public ConversationArchive(ContentResolver contentResolver, DatabaseScheduler scheduler) {
+        this.contentResolver = contentResolver;
+        this.scheduler = scheduler;
+        this.messageDao = scheduler.getDatabase().messageDao();
+        this.chatSessionDao = scheduler.getDatabase().chatSessionDao();
+    }
+
+    public void exportTo(Uri uri, Callback callback) {
+        new Thread(() -> {
+            try (Metrics.Timer ignored = Metrics.time("archive.export")) {
+                callback.onArchiveFinished(writeArchive(uri));
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Export failed: ", e);
+                callback.onArchiveFailed(e);
+            }
+        }, "archive-export").start();
+    }
+
+    public void importFrom(Uri uri, Callback callback) {
+        new Thread(() -> {
+            try (Metrics.Timer ignored = Metrics.time("archive.import")) {
+                callback.onArchiveFinished(readArchive(uri));
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Import failed: ", e);
+                callback.onArchiveFailed(e);
+            }
+        }, "archive-import").start();
+    }
+
+    // Room read transactions take the database write lock, so the export pages through plain reads instead.
+    // Bounding every page by the highest ids seen at the start keeps rows written during the export out of it.
+    private Result writeArchive(Uri uri) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        int sessionCount = 0;
+        int messageCount = 0;
+        long maxSessionId = chatSessionDao.getMaxSessionId();
+        int maxMessageId = messageDao.getMaxMessageId();
+
+        OutputStream stream = contentResolver.openOutputStream(uri, "wt");
+        if (stream == null) throw new FileNotFoundException(uri.toString());
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(stream, BUFFER_SIZE), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            JsonWriter writer = new JsonWriter(out);
+            writer.setLenient(true);
+
+            writer.beginObject();
+            writer.name("kind").value("header");
+            writer.name("version").value(FORMAT_VERSION);
+            writer.name("archive_id").value(UUID.randomUUID().toString());
+            writer.name("exported_at").value(System.currentTimeMillis());
+            writer.endObject();
+            out.write('\n');
+
+            long afterSessionId = 0;
+            List<ChatSession> sessions;
+            do {
+                sessions = chatSessionDao.getSessionsAfter(afterSessionId, maxSessionId, SESSION_PAGE_SIZE);
+                for (ChatSession session : sessions) {
+                    writer.beginObject();
+                    writer.name("kind").value("session");
+                    writer.name("id").value(session.getId());
+                    writer.name("title").value(session.getTitle());
+                    writer.name("last_modified").value(session.getLastModified());
+                    writer.endObject();
+                    out.write('\n');
+                    sessionCount++;
+                    messageCount += writeMessages(writer, out, session.getId(), maxMessageId);
+                    afterSessionId = session.getId();
+                }
+            } while (sessions.size() == SESSION_PAGE_SIZE);
+        }
+        return new Result(sessionCount, messageCount, 0, SystemClock.elapsedRealtime() - start);
+    }
+
+    private int writeMessages(JsonWriter writer, Writer out, long sessionId, int maxMessageId) throws IOException {
+        int count = 0;
+        int afterMessageId = 0;
+        List<Message> messages;
+        do {
+            messages = messageDao.getMessagesInRange(sessionId, afterMessageId, maxMessageId, MESSAGE_PAGE_SIZE);
+            for (Message message : messages) {
+                writer.beginObject();
+                writer.name("kind").value("message");
+                writer.name("session").value(sessionId);
+                writer.name("type").value(message.getType());
+                writer.name("cached").value(message.isCached());
+                writer.name("text").value(messageDao.getFullText(message));
+                writer.endObject();
+                out.write('\n');
+                afterMessageId = message.getId();
+            }
+            count += messages.size();
+        } while (messages.size() == MESSAGE_PAGE_SIZE);
+        return count;
+    }
+
+    // Sessions are tagged with the archive id, so importing the same file again skips them. A failed import
+    // removes every session it had already committed.
+    private Result readArchive(Uri uri) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        ImportState state = new ImportState();
+        try {
+            readRecords(uri, state);
+            state.awaitPending();
+            synchronized (state) {
+                if (state.failure != null) throw state.failure;
+            }
+        } catch (IOException | RuntimeException e) {
+            int removed = rollBack(state);
+            throw new IOException("Import rolled back (" + removed + " sessions removed): " + e.getMessage(), e);
+        }
+        synchronized (state) {
+            return new Result(state.sessions, state.messages, state.skippedSessions,
+                    SystemClock.elapsedRealtime() - start);
+        }
+    }
+
+    private void readRecords(Uri uri, ImportState state) throws IOException {
+        InputStream stream = contentResolver.openInputStream(uri);
+        if (stream == null) throw new FileNotFoundException(uri.toString());
+        try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(stream, BUFFER_SIZE), StandardCharsets.UTF_8), BUFFER_SIZE))) {
+            reader.setLenient(true);
+            String archiveKey = readHeader(reader);
+
+            ImportBatch batch = new ImportBatch();
+            while (reader.peek() != JsonToken.END_DOCUMENT) {
+                String kind = null;
+                long id = 0;
+                long session = 0;
+                long lastModified = 0;
+                int type = 0;
+                boolean cached = false;
+                String title = null;
+                String text = null;
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "kind": kind = reader.nextString(); break;
+                        case "id": id = reader.nextLong(); break;
+                        case "session": session = reader.nextLong(); break;
+                        case "last_modified": lastModified = reader.nextLong(); break;
+                        case "type": type = reader.nextInt(); break;
+                        case "cached": cached = reader.nextBoolean(); break;
+                        case "title": title = reader.nextString(); break;
+                        case "text": text = reader.nextString(); break;
+                        default: reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+                if ("session".equals(kind)) {
+                    batch.sessions.add(new ArchivedSession(id, archiveKey + ":" + id, title != null ? title : "",
+                            lastModified));
+                } else if ("message".equals(kind) && text != null) {
+                    batch.messages.add(new ArchivedMessage(session, type, cached, text));
+                    batch.chars += text.length();
+                }
+
+                if (batch.messages.size() >= IMPORT_BATCH_MESSAGES || batch.chars >= IMPORT_BATCH_CHARS) {
+                    submit(batch, state);
+                    batch = new ImportBatch();
+                }
+            }
+            submit(batch, state);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        }
+    }
+
+    private String readHeader(JsonReader reader) throws IOException {
+        String kind = null;
+        String archiveId = null;
+        long exportedAt = 0;
+        int version = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "kind": kind = reader.nextString(); break;
+                case "version": version = reader.nextInt(); break;
+                case "archive_id": archiveId = reader.nextString(); break;
+                case "exported_at": exportedAt = reader.nextLong(); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (!"header".equals(kind) || version < 1 || version > FORMAT_VERSION) {
+            throw new IOException("Unsupported archive version " + version);
+        }
+        return archiveId != null ? archiveId : "exported_at:" + exportedAt;
+    }
+
+    private void submit(ImportBatch batch, ImportState state) throws InterruptedException {
+        if (batch.sessions.isEmpty() && batch.messages.isEmpty()) return;
+        state.pending.acquire();
+        // Import batches yield to the UI's writes, so sending and streaming stay responsive during a long import.
+        scheduler.write(DatabaseScheduler.PRIORITY_BACKGROUND, () -> {
+            synchronized (state) {
+                if (state.failure != null) return;
+            }
+            batch.insertedSessionIds.clear();
+            batch.importedMessages = 0;
+            batch.skippedSessions = 0;
+            for (ArchivedSession archived : batch.sessions) {
+                if (chatSessionDao.isImported(archived.importKey)) {
+                    batch.skippedSessions++;
+                    continue;
+                }
+                ChatSession session = new ChatSession(archived.title);
+                session.setLastModified(archived.lastModified);
+                session.setImportKey(archived.importKey);
+                long sessionId = chatSessionDao.insertSession(session);
+                state.sessionIds.put(archived.id, sessionId);
+                batch.insertedSessionIds.add(sessionId);
+            }
+            for (ArchivedMessage archived : batch.messages) {
+                Long sessionId = state.sessionIds.get(archived.sessionId);
+                if (sessionId == null) continue;
+                insertMessage(sessionId, archived);
+                batch.importedMessages++;
+            }
+        }, new DatabaseScheduler.WriteCallback() {
+            @Override
+            public void onWriteCommitted() {
+                synchronized (state) {
+                    state.insertedSessionIds.addAll(batch.insertedSessionIds);
+                    state.sessions += batch.insertedSessionIds.size();
+                    state.messages += batch.importedMessages;
+                    state.skippedSessions += batch.skippedSessions;
+                }
+                state.pending.release();
+            }
+
+            @Override
+            public void onWriteFailed(RuntimeException e) {
+                synchronized (state) {
+                    if (state.failure == null) state.failure = e;
+                }
+                state.pending.release();
+            }
+        });
+    }
+
+    private void insertMessage(long sessionId, ArchivedMessage archived) {
+        boolean chunked = Message.chunkCount(archived.text.length()) > 0;
+        Message message = new Message(sessionId, chunked ? Message.preview(archived.text) : archived.text,
+                archived.type);
+        message.setCached(archived.cached);
+        if (!chunked) {
+            messageDao.insertOrUpdate(message);
+            return;
+        }
+        int id = (int) messageDao.insertMessageAndGetId(message);
+        messageDao.storeText(id, archived.text, Message.STATUS_COMPLETE, archived.cached, 0);
+    }
+
+    private int rollBack(ImportState state) {
+        state.awaitPending();
+        List<Long> sessionIds;
+        synchronized (state) {
+            sessionIds = new ArrayList<>(state.insertedSessionIds);
+        }
+        if (sessionIds.isEmpty()) return 0;
+
+        CountDownLatch done = new CountDownLatch(1);
+        boolean[] removed = new boolean[1];
+        scheduler.write(DatabaseScheduler.PRIORITY_BACKGROUND, () -> {
+            for (long sessionId : sessionIds) {
+                ChatSession session = new ChatSession("");
+                session.setId(sessionId);
+                chatSessionDao.deleteSession(session);
+            }
+        }, new DatabaseScheduler.WriteCallback() {
+            @Override
+            public void onWriteCommitted() {
+                removed[0] = true;
+                done.countDown();
+            }
+
+            @Override
+            public void onWriteFailed(RuntimeException e) {
+                Log.e(TAG, "Failed to remove a partial import: ", e);
+                done.countDown();
+            }
+        });
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return removed[0] ? sessionIds.size() : 0;
+    }
+}
@@ -0,0 +1,107 @@
+package ai.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConversationContextBuilder {
+
+    public static final int DEFAULT_TOKEN_BUDGET = 3000;
+    private static final int PAGE_SIZE = 40;
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private final MessageDao messageDao;
+    private final SessionSummaryDao summaryDao;
+    private final int tokenBudget;
+
+    public ConversationContextBuilder(MessageDao messageDao, SessionSummaryDao summaryDao, int tokenBudget) {
+        this.messageDao = messageDao;
+        this.summaryDao = summaryDao;
+        this.tokenBudget = tokenBudget;
+    }
+
+    public List<WorkerCodec.Turn> build(long sessionId, int promptMessageId, String prompt) {
+        int remaining = tokenBudget - estimateTokens(prompt);
+        List<Message> history = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+
+        SessionSummary summary = summaryDao.getSummary(sessionId);
+        int summarizedUpTo = 0;
+        if (summary != null) {
+            summarizedUpTo = summary.getLastMessageId();
+            remaining -= estimateTokens(summary.getSummary());
+        }
+
+        int beforeId = promptMessageId;
+        boolean full = false;
+        while (!full && remaining > 0) {
+            List<Message> page = messageDao.getMessagesBefore(sessionId, beforeId, PAGE_SIZE);
+            for (Message message : page) {
+                beforeId = message.getId();
+                if (beforeId <= summarizedUpTo) {
+                    full = true;
+                    break;
+                }
+                if (message.getStatus() == Message.STATUS_STREAMING) continue;
+                int tokens = tokenCount(message);
+                if (tokens > remaining) {
+                    full = true;
+                    break;
+                }
+                history.add(message);
+                texts.add(clipToTokens(messageDao.getFullText(message), remaining));
+                remaining -= tokens;
+            }
+            if (page.size() < PAGE_SIZE) break;
+        }
+
+        List<WorkerCodec.Turn> messages = new ArrayList<>(history.size() + 2);
+        if (summary != null) {
+            messages.add(new WorkerCodec.Turn("system", "Summary of the earlier conversation:\n" + summary.getSummary()));
+        }
+        for (int i = history.size() - 1; i >= 0; i--) {
+            Message message = history.get(i);
+            messages.add(new WorkerCodec.Turn(message.getType() == Message.TYPE_USER ? "user" : "assistant",
+                    texts.get(i)));
+        }
+        messages.add(new WorkerCodec.Turn("user", prompt));
+        return messages;
+    }
+
+    static int tokenCount(Message message) {
+        int stored = message.getTokenCount();
+        return stored > 0 ? stored : estimateTokens(message.getText());
+    }
+
+    // Keeps the start of text within budget, for rows whose stored count predates their full text.
+    static String clipToTokens(String text, int budget) {
+        if (estimateTokens(text) <= budget) return text;
+        int allowed = budget - MESSAGE_OVERHEAD_TOKENS;
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 0x80) {
+                ascii++;
+            } else {
+                other++;
+            }
+            if ((ascii + 3) / 4 + (other + 1) / 2 > allowed) {
+                int end = i > 0 && Character.isHighSurrogate(text.charAt(i - 1)) ? i - 1 : i;
+                return text.substring(0, end);
+            }
+        }
+        return text;
+    }
+
+    static int estimateTokens(String text) {
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 0x80) {
+                ascii++;
+            } else {
+                other++;
+            }
+        }
+        return MESSAGE_OVERHEAD_TOKENS + (ascii + 3) / 4 + (other + 1) / 2;
+    }
+}
@@ -0,0 +1,156 @@
+package ai.chat;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import com.google.gson.JsonSyntaxException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+public class ConversationSummarizer {
+
+    private static final String TAG = "ConversationSummarizer";
+    private static final int TRIGGER_TOKENS = 4500;
+    private static final int KEEP_RECENT_TOKENS = 1500;
+    private static final int PAGE_SIZE = 40;
+    private static final String INSTRUCTION = "Summarize the conversation below into a compact summary that keeps "
+            + "names, facts, decisions and open questions. Merge it with the previous summary if one is given. "
+            + "Write the summary in the same language as the conversation and reply with the summary only.";
+
+    private final MessageDao messageDao;
+    private final SessionSummaryDao summaryDao;
+    private final DatabaseScheduler scheduler;
+    private final OkHttpClient httpClient;
+    private final String workerUrl;
+    private final Set<Long> inFlight = new HashSet<>();
+
+    public ConversationSummarizer(MessageDao messageDao, SessionSummaryDao summaryDao, DatabaseScheduler scheduler,
+                                  OkHttpClient httpClient, String workerUrl) {
+        this.messageDao = messageDao;
+        this.summaryDao = summaryDao;
+        this.scheduler = scheduler;
+        this.httpClient = httpClient;
+        this.workerUrl = workerUrl;
+    }
+
+    public void maybeSummarize(long sessionId) {
+        synchronized (inFlight) {
+            if (!inFlight.add(sessionId)) return;
+        }
+
+        try {
+            SessionSummary previous = summaryDao.getSummary(sessionId);
+            int afterId = previous != null ? previous.getLastMessageId() : 0;
+
+            List<Message> unsummarized = new ArrayList<>();
+            int tokens = 0;
+            while (tokens < TRIGGER_TOKENS) {
+                List<Message> page = messageDao.getMessagesAfter(sessionId, afterId, PAGE_SIZE);
+                for (Message message : page) {
+                    afterId = message.getId();
+                    if (message.getStatus() == Message.STATUS_STREAMING) continue;
+                    unsummarized.add(message);
+                    tokens += ConversationContextBuilder.tokenCount(message);
+                }
+                if (page.size() < PAGE_SIZE) break;
+            }
+            if (tokens < TRIGGER_TOKENS) {
+                finished(sessionId);
+                return;
+            }
+
+            StringBuilder transcript = new StringBuilder();
+            if (previous != null) {
+                transcript.append("Previous summary:\n").append(previous.getSummary()).append("\n\n");
+            }
+            transcript.append("Conversation:\n");
+            int spanBudget = TRIGGER_TOKENS - KEEP_RECENT_TOKENS;
+            int spanTokens = 0;
+            int lastMessageId = 0;
+            for (Message message : unsummarized) {
+                int messageTokens = ConversationContextBuilder.tokenCount(message);
+                if (lastMessageId != 0 && spanTokens + messageTokens > spanBudget) break;
+                String text = ConversationContextBuilder.clipToTokens(messageDao.getFullText(message),
+                        Math.max(0, spanBudget - spanTokens));
+                spanTokens += messageTokens;
+                lastMessageId = message.getId();
+                transcript.append(message.getType() == Message.TYPE_USER ? "User: " : "Assistant: ")
+                        .append(text)
+                        .append('\n');
+            }
+
+            requestSummary(sessionId, transcript.toString(), lastMessageId);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to prepare summary for session " + sessionId, e);
+            finished(sessionId);
+        }
+    }
+
+    private void requestSummary(long sessionId, String transcript, int lastMessageId) {
+        List<WorkerCodec.Turn> messages = Arrays.asList(
+                new WorkerCodec.Turn("system", INSTRUCTION),
+                new WorkerCodec.Turn("user", transcript));
+
+        Request request = new Request.Builder()
+                .url(workerUrl)
+                .post(WorkerCodec.requestBody(messages, false))
+                .build();
+
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                Log.e(TAG, "Summary request failed: ", e);
+                finished(sessionId);
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                try (ResponseBody responseBody = response.body()) {
+                    if (!response.isSuccessful() || responseBody == null) {
+                        finished(sessionId);
+                        return;
+                    }
+                    String summary = WorkerCodec.readResponse(responseBody.charStream());
+                    if (summary == null || summary.trim().isEmpty()) {
+                        finished(sessionId);
+                        return;
+                    }
+                    // The session stays in flight until the summary commits, so a finish in between
+                    // cannot summarize the same span again.
+                    scheduler.write(() -> summaryDao.upsertSummary(
+                            new SessionSummary(sessionId, summary.trim(), lastMessageId)),
+                            new DatabaseScheduler.WriteCallback() {
+                                @Override
+                                public void onWriteCommitted() {
+                                    finished(sessionId);
+                                }
+
+                                @Override
+                                public void onWriteFailed(RuntimeException e) {
+                                    Log.e(TAG, "Failed to store summary for session " + sessionId, e);
+                                    finished(sessionId);
+                                }
+                            });
+                } catch (IOException | JsonSyntaxException | IllegalStateException e) {
+                    Log.e(TAG, "Error parsing summary: ", e);
+                    finished(sessionId);
+                }
+            }
+        });
+    }
+
+    private void finished(long sessionId) {
+        synchronized (inFlight) {
+            inFlight.remove(sessionId);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package ai.chat;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class DatabaseScheduler {
+
+    public static final int PRIORITY_UI = 0;
+    public static final int PRIORITY_BACKGROUND = 1;
+
+    private static final String TAG = "DatabaseScheduler";
+    private static final int READER_THREADS = 2;
+    private static final int MAX_WRITE_BATCH = 64;
+
+    private static volatile DatabaseScheduler INSTANCE;
+
+    private final AppDatabase db;
+    private final ThreadPoolExecutor readers;
+    private final BlockingQueue<WriteTask> writes = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Thread writer;
+    private volatile WriteListener writeListener;
+
+    public interface WriteListener {
+        void onWritesCommitted(int count);
+    }
+
+    public interface WriteCallback {
+        void onWriteCommitted();
+        void onWriteFailed(RuntimeException e);
+    }
+
+    public static DatabaseScheduler getInstance(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (DatabaseScheduler.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new DatabaseScheduler(AppDatabase.getDatabase(context));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    DatabaseScheduler(AppDatabase db) {
+        this.db = db;
+        this.readers = new ThreadPoolExecutor(READER_THREADS, READER_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), runnable -> new Thread(runnable, "db-reader"));
+
+        writer = new Thread(this::runWriter, "db-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public AppDatabase getDatabase() {
+        return db;
+    }
+
+    public void read(int priority, Runnable task) {
+        readers.execute(new ReadTask(priority, sequence.getAndIncrement(), task));
+    }
+
+    // Sees every PRIORITY_UI write submitted before it; background writes may still be queued.
+    public void readAfterWrites(int priority, Runnable task) {
+        writes.add(new WriteTask(PRIORITY_UI, sequence.getAndIncrement(), null, null,
+                new ReadTask(priority, sequence.getAndIncrement(), task), false));
+    }
+
+    public void write(Runnable task) {
+        write(task, null);
+    }
+
+    public void write(Runnable task, WriteCallback callback) {
+        write(PRIORITY_UI, task, callback);
+    }
+
+    // A task can run more than once: when another task in its batch fails, the batch is rolled back and
+    // replayed without the failing task. Follow-up work that must only see committed data belongs in the
+    // callback, not at the end of the task. Background writes only run when no UI write is queued and
+    // are never batched with one.
+    public void write(int priority, Runnable task, WriteCallback callback) {
+        writes.add(new WriteTask(priority, sequence.getAndIncrement(), task, callback, null, false));
+    }
+
+    // Runs on the writer thread outside any transaction, for statements such as VACUUM that cannot run
+    // inside one. Writes queued meanwhile wait until it returns.
+    public void runExclusive(Runnable task, WriteCallback callback) {
+        writes.add(new WriteTask(PRIORITY_BACKGROUND, sequence.getAndIncrement(), task, callback, null, true));
+    }
+
+    void shutdown() {
+        writer.interrupt();
+        readers.shutdown();
+    }
+
+    public void setWriteListener(WriteListener writeListener) {
+        this.writeListener = writeListener;
+    }
+
+    private void runWriter() {
+        List<WriteTask> batch = new ArrayList<>(MAX_WRITE_BATCH);
+        WriteTask deferred = null;
+        while (true) {
+            WriteTask first = deferred;
+            deferred = null;
+            if (first == null) {
+                try {
+                    first = writes.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            if (first.exclusive) {
+                runExclusive(first);
+                continue;
+            }
+
+            ReadTask barrier = first.afterCommit;
+            if (barrier == null) {
+                batch.add(first);
+                while (batch.size() < MAX_WRITE_BATCH) {
+                    WriteTask next = writes.poll();
+                    if (next == null) break;
+                    if (next.priority != first.priority || next.exclusive) {
+                        deferred = next;
+                        break;
+                    }
+                    if (next.afterCommit != null) {
+                        barrier = next.afterCommit;
+                        break;
+                    }
+                    batch.add(next);
+                }
+                int committed = commit(batch);
+                WriteListener listener = writeListener;
+                if (listener != null && committed > 0 && first.priority == PRIORITY_UI) {
+                    listener.onWritesCommitted(committed);
+                }
+                batch.clear();
+            }
+
+            if (barrier != null) {
+                readers.execute(barrier);
+            }
+        }
+    }
+
+    private void runExclusive(WriteTask task) {
+        try {
+            task.write.run();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Exclusive write failed: ", e);
+            task.failed(e);
+            return;
+        }
+        task.committed();
+    }
+
+    private int commit(List<WriteTask> batch) {
+        List<WriteTask> pending = new ArrayList<>(batch);
+        while (!pending.isEmpty()) {
+            WriteTask[] running = new WriteTask[1];
+            try (Metrics.Timer ignored = Metrics.time("db.write_batch")) {
+                db.runInTransaction(() -> {
+                    for (WriteTask task : pending) {
+                        running[0] = task;
+                        task.write.run();
+                    }
+                    running[0] = null;
+                });
+            } catch (RuntimeException e) {
+                if (running[0] == null) {
+                    Log.e(TAG, "Write batch failed: ", e);
+                    for (WriteTask task : pending) task.failed(e);
+                    return 0;
+                }
+                Log.e(TAG, "Write failed, replaying " + (pending.size() - 1) + " other writes: ", e);
+                pending.remove(running[0]);
+                running[0].failed(e);
+                continue;
+            }
+            for (WriteTask task : pending) task.committed();
+            return pending.size();
+        }
+        return 0;
+    }
+
+    private static class WriteTask implements Comparable<WriteTask> {
+        final int priority;
+        final long sequence;
+        final Runnable write;
+        final WriteCallback callback;
+        final ReadTask afterCommit;
+        final boolean exclusive;
+
+        WriteTask(int priority, long sequence, Runnable write, WriteCallback callback, ReadTask afterCommit,
+                  boolean exclusive) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.write = write;
+            this.callback = callback;
+            this.afterCommit = afterCommit;
+            this.exclusive = exclusive;
+        }
+
+        @Override
+        public int compareTo(@NonNull WriteTask other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+
+        void committed() {
+            if (callback == null) return;
+            try {
+                callback.onWriteCommitted();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Write callback failed: ", e);
+            }
+        }
+
+        void failed(RuntimeException error) {
+            if (callback == null) return;
+            try {
+                callback.onWriteFailed(error);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Write callback failed: ", e);
+            }
+        }
+    }
+
+    private static class ReadTask implements Runnable, Comparable<ReadTask> {
+        final int priority;
+        final long sequence;
+        final Runnable task;
+        final long queuedAt = SystemClock.elapsedRealtimeNanos();
+
+        ReadTask(int priority, long sequence, Runnable task) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            Metrics.record(priority == PRIORITY_UI ? "db.read_wait.ui" : "db.read_wait.background",
+                    SystemClock.elapsedRealtimeNanos() - queuedAt);
+            try (Metrics.Timer ignored = Metrics.time("db.read")) {
+                task.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Read failed: ", e);
+            }
+        }
+
+        @Override
+        public int compareTo(@NonNull ReadTask other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
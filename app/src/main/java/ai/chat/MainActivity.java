@@ -1,54 +1,51 @@
 package ai.chat;
 
+import android.content.pm.ApplicationInfo;
+import android.content.res.Configuration;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
-import android.util.Log;
+import android.os.SystemClock;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.EditText;
 import android.widget.ImageButton;
+import android.widget.Toast;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.ActionBarDrawerToggle;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
 import androidx.appcompat.widget.Toolbar;
 import androidx.core.view.GravityCompat;
 import androidx.drawerlayout.widget.DrawerLayout;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import androidx.room.InvalidationTracker;
 import com.google.android.material.navigation.NavigationView;
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonSyntaxException;
 import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
-import okhttp3.ResponseBody;
-import okio.BufferedSource;
+import java.util.Locale;
+import java.util.Set;
 
 public class MainActivity extends AppCompatActivity
         implements NavigationView.OnNavigationItemSelectedListener,
         ChatSessionAdapter.OnSessionInteractionListener,
-        MessageAdapter.OnMessageInteractionListener {
+        MessageAdapter.OnMessageInteractionListener,
+        ChatRequestManager.GenerationListener {
 
-    private static final String TAG = "MainActivity";
-    private static final String WORKER_URL = "https://chatai-worker.fa-ra9931143.workers.dev";
-    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
-    public static final int MESSAGE_TYPE_USER = 0;
-    public static final int MESSAGE_TYPE_AI = 1;
+    private static final String WORKER_URL = BuildConfig.WORKER_URL;
+    private static final int SEARCH_RESULT_LIMIT = 30;
+    private static final String WAITING_FOR_NETWORK = "در انتظار اتصال به اینترنت...";
 
     private DrawerLayout drawerLayout;
     private NavigationView navigationView;
@@ -59,35 +56,64 @@ public class MainActivity extends AppCompatActivity
     private RecyclerView recyclerViewSessions;
 
     private MessageAdapter messageAdapter;
-    private List<ChatSession> sessionList;
+    private StreamingRenderer streamingRenderer;
+    private MessagePager messagePager;
+    private ResponseCache responseCache;
+    private ChatRequestManager requestManager;
+    private OutboxDispatcher outboxDispatcher;
+    private ConversationArchive conversationArchive;
     private ChatSessionAdapter sessionAdapter;
+    private InvalidationTracker.Observer sessionObserver;
     private long currentSessionId = -1;
     private boolean isNewSession = false;
+    private ChatSession pendingNewSession;
+    private boolean firstContentReported;
 
-    private OkHttpClient httpClient;
-    private Gson gson;
     private Handler mainHandler;
     private AppDatabase db;
-    private ExecutorService databaseExecutor;
+    private DatabaseScheduler databaseScheduler;
 
+    private final ActivityResultLauncher<String> exportLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument(ConversationArchive.MIME_TYPE), this::exportConversations);
+    private final ActivityResultLauncher<String[]> importLauncher = registerForActivityResult(
+            new ActivityResultContracts.OpenDocument(), this::importConversations);
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_main);
+        try (Metrics.Timer ignored = Metrics.time("startup.activity_create")) {
+            setContentView(R.layout.activity_main);
 
-        initializeViews();
-        setupToolbarAndDrawer();
-        initializeChat();
-        initializeHttpClient();
+            initializeViews();
+            setupToolbarAndDrawer();
 
-        databaseExecutor = Executors.newSingleThreadExecutor();
-        db = AppDatabase.getDatabase(this);
+            databaseScheduler = DatabaseScheduler.getInstance(this);
+            db = AppDatabase.getDatabase(this);
 
-        setupSessionList();
-        loadChatSessions();
+            initializeChat();
+            initializeServices();
+
+            setupSessionList();
+            loadInitialSessions();
+        }
 
         buttonSend.setOnClickListener(v -> handleSendClick());
+        editTextPrompt.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                if (before == 0 && count > 0) {
+                    ChatTransport.getInstance().prewarm(WORKER_URL);
+                }
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+            }
+        });
     }
 
     private void initializeViews() {
@@ -113,15 +139,19 @@ public class MainActivity extends AppCompatActivity
         recyclerViewChat.setLayoutManager(new LinearLayoutManager(this));
         recyclerViewChat.setAdapter(messageAdapter);
         mainHandler = new Handler(Looper.getMainLooper());
+        streamingRenderer = new StreamingRenderer(recyclerViewChat, messageAdapter);
+        messagePager = new MessagePager(db.messageDao(), databaseScheduler, mainHandler, messageAdapter);
+        recyclerViewChat.addOnScrollListener(messagePager);
     }
 
-    private void initializeHttpClient() {
-        httpClient = new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .writeTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(120, TimeUnit.SECONDS)
-                .build();
-        gson = new Gson();
+    private void initializeServices() {
+        ChatTransport.getInstance().prewarm(WORKER_URL);
+        responseCache = ResponseCache.getInstance(this);
+        outboxDispatcher = OutboxDispatcher.getInstance(this);
+        conversationArchive = new ConversationArchive(getContentResolver(), databaseScheduler);
+        requestManager = ChatRequestManager.getInstance(this);
+        requestManager.attach(this);
+        messagePager.setLiveTextSource(requestManager);
     }
 
     private void setupSessionList() {
@@ -131,31 +161,65 @@ public class MainActivity extends AppCompatActivity
         View headerView = navigationView.getHeaderView(0);
         recyclerViewSessions = headerView.findViewById(R.id.recyclerViewSessions);
 
-        sessionList = new ArrayList<>();
-        sessionAdapter = new ChatSessionAdapter(sessionList, this);
+        sessionAdapter = new ChatSessionAdapter(this);
         recyclerViewSessions.setLayoutManager(new LinearLayoutManager(this));
         recyclerViewSessions.setAdapter(sessionAdapter);
+
+        sessionObserver = new InvalidationTracker.Observer("chat_sessions") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                loadChatSessions();
+            }
+        };
+        db.getInvalidationTracker().addObserver(sessionObserver);
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        sessionAdapter.onConfigurationChanged();
+    }
+
+    @Override
+    protected void onDestroy() {
+        db.getInvalidationTracker().removeObserver(sessionObserver);
+        requestManager.detach(this);
+        super.onDestroy();
+    }
+
+    private void loadInitialSessions() {
+        boolean prefetched = StartupPrefetch.getInstance(this).consume(
+                result -> showSessions(result.sessions, result.latestMessages));
+        if (!prefetched) loadChatSessions();
     }
 
     private void loadChatSessions() {
-        databaseExecutor.execute(() -> {
+        databaseScheduler.readAfterWrites(DatabaseScheduler.PRIORITY_UI, () -> {
             List<ChatSession> sessions = db.chatSessionDao().getAllSessions();
-            mainHandler.post(() -> {
-                sessionList.clear();
-                sessionList.addAll(sessions);
-                sessionAdapter.notifyDataSetChanged();
-
-                if (currentSessionId == -1) {
-                    if (sessions.isEmpty()) {
-                        createNewChatSession();
-                    } else {
-                        loadChatForSession(sessions.get(0));
-                    }
-                }
-            });
+            mainHandler.post(() -> showSessions(sessions, null));
         });
     }
 
+    private void showSessions(List<ChatSession> sessions, List<Message> latestMessages) {
+        sessionAdapter.submitList(sessions);
+
+        if (currentSessionId == -1 && !isNewSession && pendingNewSession == null) {
+            if (sessions.isEmpty()) {
+                createNewChatSession();
+                reportFirstContent();
+            } else {
+                loadChatForSession(sessions.get(0), 0, latestMessages);
+            }
+        }
+    }
+
+    private void reportFirstContent() {
+        if (firstContentReported) return;
+        firstContentReported = true;
+        Metrics.record("startup.first_content", SystemClock.elapsedRealtimeNanos() - ChatApplication.getStartedAtNanos());
+        reportFullyDrawn();
+    }
+
     private void createNewChatSession() {
         isNewSession = true;
         ChatSession tempSession = new ChatSession("چت جدید");
@@ -163,176 +227,453 @@ public class MainActivity extends AppCompatActivity
         loadChatForSession(tempSession);
     }
 
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main_menu, menu);
+        menu.findItem(R.id.action_response_cache).setChecked(responseCache.isEnabled());
+        menu.findItem(R.id.action_metrics).setVisible(
+                (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0);
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        if (searchView != null) {
+            searchView.setQueryHint("جستجو در گفتگوها");
+            searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+                @Override
+                public boolean onQueryTextSubmit(String query) {
+                    searchMessages(query);
+                    searchView.clearFocus();
+                    return true;
+                }
+
+                @Override
+                public boolean onQueryTextChange(String newText) {
+                    return false;
+                }
+            });
+        }
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        if (item.getItemId() == R.id.action_response_cache) {
+            boolean enabled = !item.isChecked();
+            item.setChecked(enabled);
+            responseCache.setEnabled(enabled);
+            return true;
+        }
+        if (item.getItemId() == R.id.action_cache_stats) {
+            showCacheStats();
+            return true;
+        }
+        if (item.getItemId() == R.id.action_export) {
+            String date = new SimpleDateFormat("yyyyMMdd-HHmm", Locale.US).format(new Date());
+            exportLauncher.launch("chatai-" + date + ".jsonl.gz");
+            return true;
+        }
+        if (item.getItemId() == R.id.action_import) {
+            importLauncher.launch(new String[]{ConversationArchive.MIME_TYPE, "application/octet-stream"});
+            return true;
+        }
+        if (item.getItemId() == R.id.action_metrics) {
+            showMetrics();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void showCacheStats() {
+        databaseScheduler.read(DatabaseScheduler.PRIORITY_UI, () -> {
+            long size = responseCache.getSize();
+            mainHandler.post(() -> new AlertDialog.Builder(this)
+                    .setTitle("آمار حافظه پاسخ‌ها")
+                    .setMessage("پاسخ از حافظه: " + responseCache.getHits()
+                            + "\nارسال به سرور: " + responseCache.getMisses()
+                            + "\nحجم: " + size / 1024 + " کیلوبایت")
+                    .setPositiveButton("باشه", null)
+                    .show());
+        });
+    }
+
+    private void showMetrics() {
+        databaseScheduler.read(DatabaseScheduler.PRIORITY_UI, () -> {
+            String databaseStats = MaintenanceScheduler.format(MaintenanceScheduler.getInstance(this).getStats());
+            List<Metrics.Summary> summaries = Metrics.snapshot();
+            mainHandler.post(() -> new AlertDialog.Builder(this)
+                    .setTitle("آمار عملکرد")
+                    .setMessage(databaseStats + "\n\n"
+                            + (summaries.isEmpty() ? "هنوز داده‌ای ثبت نشده." : Metrics.format(summaries)))
+                    .setPositiveButton("باشه", null)
+                    .setNeutralButton("ذخیره در فایل", (dialog, which) -> exportMetrics())
+                    .setNegativeButton("پاک کردن", (dialog, which) -> Metrics.reset())
+                    .show());
+        });
+    }
+
+    private void exportMetrics() {
+        new Thread(() -> {
+            String message;
+            try {
+                message = "ذخیره شد: " + Metrics.export(getExternalFilesDir(null)).getAbsolutePath();
+            } catch (IOException e) {
+                message = "خطا در ذخیره فایل: " + e.getMessage();
+            }
+            String text = message;
+            mainHandler.post(() -> Toast.makeText(this, text, Toast.LENGTH_LONG).show());
+        }, "metrics-export").start();
+    }
+
+    private void exportConversations(Uri uri) {
+        if (uri == null) return;
+        Toast.makeText(this, "در حال پشتیبان‌گیری...", Toast.LENGTH_SHORT).show();
+        conversationArchive.exportTo(uri, new ArchiveCallback("پشتیبان ذخیره شد"));
+    }
+
+    private void importConversations(Uri uri) {
+        if (uri == null) return;
+        Toast.makeText(this, "در حال بازیابی...", Toast.LENGTH_SHORT).show();
+        conversationArchive.importFrom(uri, new ArchiveCallback("بازیابی انجام شد"));
+    }
+
+    private class ArchiveCallback implements ConversationArchive.Callback {
+        private final String title;
+
+        ArchiveCallback(String title) {
+            this.title = title;
+        }
+
+        @Override
+        public void onArchiveFinished(ConversationArchive.Result result) {
+            String message = title + ": " + result.sessions + " گفتگو، " + result.messages + " پیام ("
+                    + result.messagesPerSecond() + " پیام در ثانیه)"
+                    + (result.skippedSessions > 0
+                            ? "\n" + result.skippedSessions + " گفتگو قبلاً بازیابی شده بود" : "");
+            mainHandler.post(() -> Toast.makeText(MainActivity.this, message, Toast.LENGTH_LONG).show());
+        }
+
+        @Override
+        public void onArchiveFailed(Exception e) {
+            mainHandler.post(() -> Toast.makeText(MainActivity.this,
+                    "خطا در پردازش فایل پشتیبان: " + e.getMessage(), Toast.LENGTH_LONG).show());
+        }
+    }
+
+    private void searchMessages(String query) {
+        databaseScheduler.read(DatabaseScheduler.PRIORITY_UI, () -> {
+            List<MessageSearchResult> results = db.messageSearchDao().search(query, SEARCH_RESULT_LIMIT);
+            mainHandler.post(() -> showSearchResults(results));
+        });
+    }
+
+    private void showSearchResults(List<MessageSearchResult> results) {
+        if (results.isEmpty()) {
+            new AlertDialog.Builder(this)
+                    .setTitle("جستجو")
+                    .setMessage("نتیجه‌ای پیدا نشد.")
+                    .setPositiveButton("باشه", null)
+                    .show();
+            return;
+        }
+
+        CharSequence[] items = new CharSequence[results.size()];
+        for (int i = 0; i < results.size(); i++) {
+            MessageSearchResult result = results.get(i);
+            items[i] = result.sessionTitle + "\n" + result.snippet;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("نتایج جستجو در " + MessageSearchDao.CANDIDATE_LIMIT + " تطابق اخیر")
+                .setItems(items, (dialog, which) -> {
+                    MessageSearchResult result = results.get(which);
+                    ChatSession session = new ChatSession(result.sessionTitle);
+                    session.setId(result.sessionId);
+                    loadChatForSession(session, result.messageId);
+                })
+                .show();
+    }
+
     private void loadChatForSession(ChatSession session) {
+        loadChatForSession(session, 0);
+    }
+
+    private void loadChatForSession(ChatSession session, int focusMessageId) {
+        loadChatForSession(session, focusMessageId, null);
+    }
+
+    private void loadChatForSession(ChatSession session, int focusMessageId, List<Message> latestMessages) {
         currentSessionId = session.getId();
+        pendingNewSession = null;
+        updateSendButton();
         if (getSupportActionBar() != null) {
             getSupportActionBar().setTitle(session.getTitle());
         }
 
         if (currentSessionId == -1) {
-            messageAdapter.submitList(new ArrayList<>());
+            messagePager.reset();
             isNewSession = true;
             return;
         }
 
         isNewSession = false;
-        databaseExecutor.execute(() -> {
-            List<Message> messages = db.messageDao().getMessagesForSession(currentSessionId);
+        long sessionId = currentSessionId;
+        if (focusMessageId != 0) {
+            messagePager.loadAround(sessionId, focusMessageId, () -> scrollToMessage(focusMessageId));
+            return;
+        }
+        Runnable onLoaded = () -> {
+            reportFirstContent();
+            scrollToLatest();
+            checkForInterruptedGeneration(sessionId);
+        };
+        if (latestMessages != null) {
+            messagePager.showLatest(sessionId, latestMessages, onLoaded);
+        } else {
+            messagePager.loadLatest(sessionId, onLoaded);
+        }
+    }
+
+    private void checkForInterruptedGeneration(long sessionId) {
+        if (requestManager.isGenerating(sessionId)) return;
+        databaseScheduler.read(DatabaseScheduler.PRIORITY_UI, () -> {
+            Message interrupted = db.messageDao().getInterruptedMessage(sessionId);
+            if (interrupted == null) return;
+            Message prompt = db.messageDao().getPreviousUserMessage(sessionId, interrupted.getId());
             mainHandler.post(() -> {
-                messageAdapter.submitList(messages);
-                if (!messages.isEmpty()) {
-                    recyclerViewChat.scrollToPosition(messages.size() - 1);
-                }
+                if (currentSessionId != sessionId || requestManager.isGenerating(sessionId)) return;
+                new AlertDialog.Builder(this)
+                        .setTitle("پاسخ ناتمام")
+                        .setMessage("پاسخ قبلی کامل نشد. دوباره تلاش شود؟")
+                        .setPositiveButton("بله", (dialog, which) -> retryInterruptedMessage(interrupted, prompt))
+                        .setNegativeButton("خیر", (dialog, which) -> markMessageComplete(interrupted))
+                        .show();
             });
         });
     }
 
+    private void retryInterruptedMessage(Message interrupted, Message prompt) {
+        List<Message> currentList = messageAdapter.getLatestList();
+        int lastIndex = currentList.size() - 1;
+        if (prompt == null || lastIndex < 0 || currentList.get(lastIndex).getId() != interrupted.getId()) {
+            markMessageComplete(interrupted);
+            return;
+        }
+
+        Message placeholder = updateMessage(interrupted, message -> {
+            message.setText("...");
+            message.setStatus(Message.STATUS_STREAMING);
+        });
+        databaseScheduler.write(() -> outboxDispatcher.enqueue(prompt, placeholder),
+                afterCommit(outboxDispatcher::drain));
+    }
+
+    private void markMessageComplete(Message message) {
+        updateMessage(message, loaded -> loaded.setStatus(Message.STATUS_COMPLETE));
+        databaseScheduler.write(() ->
+                db.messageDao().completeMessage(message.getId()));
+    }
+
+    private void scrollToMessage(int messageId) {
+        List<Message> currentList = messageAdapter.getLatestList();
+        for (int i = 0; i < currentList.size(); i++) {
+            if (currentList.get(i).getId() == messageId) {
+                ((LinearLayoutManager) recyclerViewChat.getLayoutManager()).scrollToPositionWithOffset(i, 0);
+                return;
+            }
+        }
+    }
+
+    private void scrollToLatest() {
+        int count = messageAdapter.getItemCount();
+        if (count > 0) {
+            recyclerViewChat.scrollToPosition(count - 1);
+        }
+    }
+
     private void handleSendClick() {
         String prompt = editTextPrompt.getText().toString().trim();
-        if (prompt.isEmpty() || !buttonSend.isEnabled()) return;
+        if (currentSessionId != -1 && requestManager.isDuplicate(currentSessionId, prompt)) {
+            editTextPrompt.setText("");
+            return;
+        }
+        if (currentSessionId != -1 && requestManager.isGenerating(currentSessionId)) {
+            requestManager.cancel(currentSessionId);
+            return;
+        }
+
+        if (prompt.isEmpty() || (currentSessionId == -1 && !isNewSession)) return;
 
         editTextPrompt.setText("");
-        setSendButtonEnabled(false);
 
         if (isNewSession) {
             String title = prompt.length() > 30 ? prompt.substring(0, 30) + "..." : prompt;
             ChatSession newSession = new ChatSession(title);
+            isNewSession = false;
+            pendingNewSession = newSession;
+            if (getSupportActionBar() != null) {
+                getSupportActionBar().setTitle(title);
+            }
 
-            databaseExecutor.execute(() -> {
+            Message promptMessage = createPrompt(-1, prompt);
+            Message placeholder = createPlaceholder(-1);
+            showExchange(promptMessage, placeholder);
+
+            Message storedPrompt = promptMessage.copy();
+            Message storedPlaceholder = placeholder.copy();
+            databaseScheduler.write(() -> {
                 long newId = db.chatSessionDao().insertSession(newSession);
                 newSession.setId(newId);
-
-                mainHandler.post(() -> {
-                    currentSessionId = newId;
-                    isNewSession = false;
-
-                    loadChatSessions();
-
-                    if (getSupportActionBar() != null) {
-                        getSupportActionBar().setTitle(title);
-                    }
-
-                    addMessage(prompt, MESSAGE_TYPE_USER);
-                    sendRequestToWorker(prompt);
-                });
-            });
+                storedPrompt.setSessionId(newId);
+                storedPlaceholder.setSessionId(newId);
+                db.messageDao().appendExchange(storedPrompt, storedPlaceholder);
+                outboxDispatcher.enqueue(storedPrompt, storedPlaceholder);
+            }, afterCommit(() -> {
+                publishIds(storedPrompt, storedPlaceholder);
+                outboxDispatcher.drain();
+                if (pendingNewSession != newSession) return;
+                pendingNewSession = null;
+                currentSessionId = newSession.getId();
+                updateSendButton();
+            }));
         } else {
-            addMessage(prompt, MESSAGE_TYPE_USER);
-            sendRequestToWorker(prompt);
+            addExchange(currentSessionId, prompt);
         }
     }
 
-    private void addMessage(String text, int type) {
-        if (currentSessionId == -1) return;
-        Message message = new Message(currentSessionId, text, type);
+    private Message createPrompt(long sessionId, String prompt) {
+        return new Message(sessionId, prompt, Message.TYPE_USER);
+    }
+
+    private Message createPlaceholder(long sessionId) {
+        Message placeholder = new Message(sessionId, "...", Message.TYPE_AI);
+        placeholder.setStatus(Message.STATUS_STREAMING);
+        if (!outboxDispatcher.isOnline()) placeholder.setText(WAITING_FOR_NETWORK);
+        return placeholder;
+    }
 
-        List<Message> currentList = new ArrayList<>(messageAdapter.getCurrentList());
-        currentList.add(message);
+    private void showExchange(Message promptMessage, Message placeholder) {
+        List<Message> currentList = new ArrayList<>(messageAdapter.getLatestList());
+        currentList.add(promptMessage);
+        currentList.add(placeholder);
         messageAdapter.submitList(currentList);
         recyclerViewChat.scrollToPosition(currentList.size() - 1);
+    }
 
-        databaseExecutor.execute(() -> {
-            db.messageDao().insertOrUpdate(message);
-            ChatSession sessionToUpdate = null;
-            for(ChatSession s : sessionList) {
-                if (s.getId() == currentSessionId) {
-                    sessionToUpdate = s;
-                    break;
-                }
-            }
-            if (sessionToUpdate != null) {
-                sessionToUpdate.setLastModified(System.currentTimeMillis());
-                db.chatSessionDao().updateSession(sessionToUpdate);
+    // The writer inserts copies, since the adapter diffs the shown rows off the main thread. The ids it
+    // assigned reach the shown rows here, as replacements matched by local key.
+    private void publishIds(Message... stored) {
+        List<Message> currentList = new ArrayList<>(messageAdapter.getLatestList());
+        boolean changed = false;
+        for (Message message : stored) {
+            for (int i = currentList.size() - 1; i >= 0; i--) {
+                Message shown = currentList.get(i);
+                if (shown.getLocalKey() != message.getLocalKey()) continue;
+                Message updated = shown.copy();
+                updated.setId(message.getId());
+                updated.setSessionId(message.getSessionId());
+                currentList.set(i, updated);
+                changed = true;
+                break;
             }
-        });
+        }
+        if (changed) messageAdapter.submitList(currentList);
     }
 
-    private void sendRequestToWorker(String prompt) {
-        JsonObject message = new JsonObject();
-        message.addProperty("role", "user");
-        message.addProperty("content", prompt);
-
-        JsonArray messages = new JsonArray();
-        messages.add(message);
-
-        JsonObject payload = new JsonObject();
-        payload.add("messages", messages);
+    private void removeExchange(Message promptMessage, Message placeholder) {
+        List<Message> currentList = new ArrayList<>(messageAdapter.getLatestList());
+        boolean removed = currentList.remove(promptMessage);
+        removed |= currentList.remove(placeholder);
+        if (removed) messageAdapter.submitList(currentList);
+    }
 
-        RequestBody body = RequestBody.create(payload.toString(), JSON);
-        Request request = new Request.Builder().url(WORKER_URL).post(body).build();
+    private void addExchange(long sessionId, String prompt) {
+        Message promptMessage = createPrompt(sessionId, prompt);
+        Message placeholder = createPlaceholder(sessionId);
 
-        addTypingIndicator();
+        boolean reloadWindow = !messagePager.isAtLatest();
+        if (!reloadWindow) {
+            showExchange(promptMessage, placeholder);
+        }
 
-        httpClient.newCall(request).enqueue(new Callback() {
-            @Override
-            public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                Log.e(TAG, "Request failed: ", e);
-                updateAiMessage("خطا در ارتباط با سرور: " + e.getMessage(), true);
-                setSendButtonEnabled(true);
+        Message storedPrompt = promptMessage.copy();
+        Message storedPlaceholder = placeholder.copy();
+        boolean[] duplicate = new boolean[1];
+        databaseScheduler.write(() -> {
+            duplicate[0] = db.outboxDao().isQueued(sessionId, prompt);
+            if (duplicate[0]) return;
+            db.messageDao().appendExchange(storedPrompt, storedPlaceholder);
+            outboxDispatcher.enqueue(storedPrompt, storedPlaceholder);
+        }, afterCommit(() -> {
+            if (duplicate[0]) {
+                removeExchange(promptMessage, placeholder);
+                return;
             }
+            publishIds(storedPrompt, storedPlaceholder);
+            outboxDispatcher.drain();
+        }));
 
-            @Override
-            public void onResponse(@NonNull Call call, @NonNull Response response) {
-                try (ResponseBody responseBody = response.body()) {
-                    if (!response.isSuccessful() || responseBody == null) {
-                        updateAiMessage("خطا: " + response.code(), true);
-                        return;
-                    }
-                    handleStreamingResponse(responseBody);
-                } finally {
-                    setSendButtonEnabled(true);
-                }
-            }
-        });
+        if (reloadWindow) {
+            messagePager.loadLatestAfterWrites(sessionId, this::scrollToLatest);
+        }
     }
 
-    private void handleStreamingResponse(ResponseBody responseBody) {
-        try {
-            String responseString = responseBody.string();
-            JsonObject jsonObject = gson.fromJson(responseString, JsonObject.class);
-            String aiResponse = jsonObject.get("response").getAsString();
-            updateAiMessage(aiResponse, true);
-        } catch (IOException | JsonSyntaxException e) {
-            Log.e(TAG, "Error parsing response: ", e);
-            updateAiMessage("خطا در پردازش پاسخ.", true);
-        }
+    @Override
+    public void onGenerationStarted(long sessionId) {
+        mainHandler.post(this::updateSendButton);
     }
 
-    private void addTypingIndicator() {
-        mainHandler.post(() -> addMessage("...", MESSAGE_TYPE_AI));
+    @Override
+    public void onGenerationDelta(long sessionId, Message placeholder, String delta) {
+        streamingRenderer.append(placeholder, delta);
     }
 
-    private void updateAiMessage(String newText, boolean isFinal) {
+    @Override
+    public void onGenerationQueued(long sessionId, Message placeholder) {
         mainHandler.post(() -> {
-            List<Message> currentList = messageAdapter.getCurrentList();
-            if (currentList.isEmpty()) return;
-
-            ArrayList<Message> newList = new ArrayList<>(currentList);
-            int lastIndex = newList.size() - 1;
-            Message lastMessage = newList.get(lastIndex);
-
-            if (lastMessage.getType() == MESSAGE_TYPE_AI) {
-                Message updatedMessage = new Message();
-                updatedMessage.setId(lastMessage.getId());
-                updatedMessage.setSessionId(lastMessage.getSessionId());
-                updatedMessage.setType(lastMessage.getType());
-                updatedMessage.setText(newText);
-
-                newList.set(lastIndex, updatedMessage);
-                messageAdapter.submitList(newList, () -> {
-                    if (recyclerViewChat.isComputingLayout()) return;
-                    recyclerViewChat.scrollToPosition(lastIndex);
-                });
-
-                if (isFinal) {
-                    databaseExecutor.execute(() -> db.messageDao().insertOrUpdate(updatedMessage));
-                }
-            }
+            streamingRenderer.finish(placeholder);
+            updateMessage(placeholder, loaded -> loaded.setText(WAITING_FOR_NETWORK));
+            updateSendButton();
         });
     }
 
-    private void setSendButtonEnabled(boolean enabled) {
-        mainHandler.post(() -> buttonSend.setEnabled(enabled));
+    @Override
+    public void onGenerationFinished(long sessionId, Message placeholder, String text, boolean cached) {
+        mainHandler.post(() -> {
+            streamingRenderer.finish(placeholder);
+            int chunkCount = Message.chunkCount(text.length());
+            updateMessage(placeholder, loaded -> {
+                loaded.setText(chunkCount == 0 ? text : Message.preview(text));
+                loaded.setStatus(Message.STATUS_COMPLETE);
+                loaded.setCached(cached);
+                loaded.setChunkCount(chunkCount);
+                loaded.setExpanded(false);
+            });
+            updateSendButton();
+        });
+    }
+
+    // Items in the adapter's list are what DiffUtil compares against, so they are replaced rather than
+    // edited, starting from the latest submitted list so an update made while a diff is pending is kept.
+    // Only the streaming frame patches a row in place.
+    private Message updateMessage(Message message, MessageUpdate update) {
+        int position = messageAdapter.latestPositionOf(message);
+        if (position < 0) return null;
+        List<Message> currentList = new ArrayList<>(messageAdapter.getLatestList());
+        Message updated = currentList.get(position).copy();
+        update.apply(updated);
+        currentList.set(position, updated);
+        boolean atBottom = !recyclerViewChat.canScrollVertically(1);
+        messageAdapter.submitList(currentList, () -> {
+            if (atBottom) recyclerViewChat.scrollToPosition(messageAdapter.getItemCount() - 1);
+        });
+        return updated;
+    }
+
+    private interface MessageUpdate {
+        void apply(Message message);
+    }
+
+    private void updateSendButton() {
+        boolean generating = currentSessionId != -1 && requestManager.isGenerating(currentSessionId);
+        buttonSend.setImageResource(generating ? R.drawable.ic_stop : R.drawable.ic_send);
+        buttonSend.setContentDescription(generating ? "توقف" : "ارسال");
     }
 
     @Override
@@ -377,27 +718,61 @@ public class MainActivity extends AppCompatActivity
         );
     }
 
-    private void deleteChatSession(ChatSession session) {
-        databaseExecutor.execute(() -> {
-            db.chatSessionDao().deleteSession(session);
-            mainHandler.post(() -> {
-                if (currentSessionId == session.getId()) {
-                    currentSessionId = -1;
-                }
-                loadChatSessions();
-            });
+    @Override
+    public void onExpandMessage(Message message) {
+        loadFullText(message, text -> updateMessage(message, loaded -> {
+            loaded.setText(text);
+            loaded.setExpanded(true);
+        }));
+    }
+
+    @Override
+    public void onCopyMessage(Message message) {
+        loadFullText(message, messageAdapter::copyToClipboard);
+    }
+
+    private void loadFullText(Message message, FullTextCallback callback) {
+        databaseScheduler.read(DatabaseScheduler.PRIORITY_UI, () -> {
+            String text = db.messageDao().getFullText(message);
+            mainHandler.post(() -> callback.onLoaded(text));
         });
     }
 
+    private interface FullTextCallback {
+        void onLoaded(String text);
+    }
+
+    private void deleteChatSession(ChatSession session) {
+        requestManager.cancel(session.getId());
+        databaseScheduler.write(() -> db.chatSessionDao().deleteSession(session), afterCommit(() -> {
+            if (currentSessionId == session.getId()) {
+                currentSessionId = -1;
+            }
+            loadChatSessions();
+        }));
+    }
+
     private void deleteMessage(Message message) {
-        databaseExecutor.execute(() -> {
-            db.messageDao().deleteMessage(message);
-            mainHandler.post(() -> {
-                List<Message> currentList = new ArrayList<>(messageAdapter.getCurrentList());
-                currentList.removeIf(m -> m.getId() == message.getId());
-                messageAdapter.submitList(currentList);
-            });
-        });
+        databaseScheduler.write(() -> db.messageDao().deleteMessage(message), afterCommit(() -> {
+            List<Message> currentList = new ArrayList<>(messageAdapter.getLatestList());
+            currentList.removeIf(m -> m.getId() == message.getId());
+            messageAdapter.submitList(currentList);
+        }));
+    }
+
+    private DatabaseScheduler.WriteCallback afterCommit(Runnable action) {
+        return new DatabaseScheduler.WriteCallback() {
+            @Override
+            public void onWriteCommitted() {
+                mainHandler.post(action);
+            }
+
+            @Override
+            public void onWriteFailed(RuntimeException e) {
+                mainHandler.post(() -> Toast.makeText(MainActivity.this,
+                        "خطا در ذخیره‌سازی: " + e.getMessage(), Toast.LENGTH_LONG).show());
+            }
+        };
     }
 
     private void showDeleteConfirmationDialog(String title, String message, Runnable onConfirm) {
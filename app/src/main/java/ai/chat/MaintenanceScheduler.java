@@ -0,0 +1,301 @@
+package ai.chat;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class MaintenanceScheduler implements DatabaseScheduler.WriteListener {
+
+    private static final String TAG = "MaintenanceScheduler";
+    private static final String PREFS_NAME = "db_maintenance";
+    private static final String KEY_LAST_OPTIMIZE = "last_optimize";
+    private static final String KEY_COMPRESSION_DONE = "compression_done_v10";
+    private static final String KEY_INDEX_DONE = "index_done_v11";
+    private static final String KEY_COMPRESSION_CURSOR = "compression_cursor_v10";
+    private static final String KEY_INDEX_CURSOR = "index_cursor_v11";
+    private static final String DATABASE_NAME = "chat_database";
+
+    private static final long IDLE_DELAY_MS = 5_000;
+    private static final int CHECKPOINT_WRITES = 200;
+    private static final long OPTIMIZE_INTERVAL_MS = TimeUnit.DAYS.toMillis(1);
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+    private static final long SMALL_DATABASE_BYTES = 4 * 1024 * 1024;
+    private static final int VACUUM_MIN_FREE_PAGES = 64;
+    private static final int VACUUM_STEP_PAGES = 256;
+    private static final int MAX_VACUUM_STEPS = 8;
+    private static final int BATCH_ROWS = 100;
+    private static final int MAX_BATCH_STEPS = 10;
+
+    private static volatile MaintenanceScheduler INSTANCE;
+
+    private final DatabaseScheduler scheduler;
+    private final AppDatabase db;
+    private final File databaseFile;
+    private final SharedPreferences prefs;
+    private final PowerManager powerManager;
+    private final BatteryManager batteryManager;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "db-maintenance");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final Object lock = new Object();
+    private ScheduledFuture<?> idleTask;
+    private int writesSinceCheckpoint;
+    private volatile long lastWriteAt;
+
+    private interface BatchStep {
+        int run(int afterId, int limit);
+    }
+
+    public static class Stats {
+        public final long fileBytes;
+        public final long walBytes;
+        public final long pageSize;
+        public final long pageCount;
+        public final long freelistCount;
+        public final int autoVacuum;
+
+        Stats(long fileBytes, long walBytes, long pageSize, long pageCount, long freelistCount, int autoVacuum) {
+            this.fileBytes = fileBytes;
+            this.walBytes = walBytes;
+            this.pageSize = pageSize;
+            this.pageCount = pageCount;
+            this.freelistCount = freelistCount;
+            this.autoVacuum = autoVacuum;
+        }
+    }
+
+    public static MaintenanceScheduler getInstance(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (MaintenanceScheduler.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new MaintenanceScheduler(context.getApplicationContext(),
+                            DatabaseScheduler.getInstance(context));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private MaintenanceScheduler(Context context, DatabaseScheduler scheduler) {
+        this.scheduler = scheduler;
+        this.db = scheduler.getDatabase();
+        this.databaseFile = context.getDatabasePath(DATABASE_NAME);
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        this.batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
+        scheduler.setWriteListener(this);
+        scheduleIdle();
+    }
+
+    @Override
+    public void onWritesCommitted(int count) {
+        lastWriteAt = SystemClock.uptimeMillis();
+        synchronized (lock) {
+            writesSinceCheckpoint += count;
+        }
+        scheduleIdle();
+    }
+
+    private void scheduleIdle() {
+        synchronized (lock) {
+            if (idleTask != null) idleTask.cancel(false);
+            idleTask = executor.schedule(this::runIdle, IDLE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private boolean isIdle() {
+        return SystemClock.uptimeMillis() - lastWriteAt >= IDLE_DELAY_MS;
+    }
+
+    private void runIdle() {
+        try {
+            SupportSQLiteDatabase database = db.getOpenHelper().getWritableDatabase();
+            enableIncrementalVacuum(database);
+            checkpointIfNeeded(database);
+            runBatches(KEY_COMPRESSION_DONE, KEY_COMPRESSION_CURSOR, "db.maintenance.compress",
+                    db.messageDao()::compressStoredText);
+            runBatches(KEY_INDEX_DONE, KEY_INDEX_CURSOR, "db.maintenance.index", db.messageDao()::indexStoredText);
+            vacuumIncrementally(database);
+            optimizeIfDue(database);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Maintenance failed: ", e);
+        }
+    }
+
+    private void enableIncrementalVacuum(SupportSQLiteDatabase database) {
+        if (queryLong(database, "PRAGMA auto_vacuum") == AUTO_VACUUM_INCREMENTAL || !isIdle()
+                || !canRewriteFile()) {
+            return;
+        }
+        boolean done = submit(true, () -> {
+            try (Metrics.Timer ignored = Metrics.time("db.maintenance.enable_auto_vacuum")) {
+                database.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+                database.execSQL("VACUUM");
+            }
+        });
+        if (done) Log.i(TAG, "auto_vacuum set to INCREMENTAL, file is now " + databaseFile.length() + " bytes");
+    }
+
+    // The conversion rewrites the whole file while holding the writer, so a database that has grown past a few
+    // megabytes only converts while the device is charging with the screen off.
+    private boolean canRewriteFile() {
+        if (databaseFile.length() <= SMALL_DATABASE_BYTES) return true;
+        return batteryManager != null && batteryManager.isCharging()
+                && powerManager != null && !powerManager.isInteractive();
+    }
+
+    private void checkpointIfNeeded(SupportSQLiteDatabase database) {
+        synchronized (lock) {
+            if (writesSinceCheckpoint < CHECKPOINT_WRITES) return;
+            writesSinceCheckpoint = 0;
+        }
+        checkpoint(database);
+    }
+
+    private void checkpoint(SupportSQLiteDatabase database) {
+        submit(true, () -> {
+            try (Metrics.Timer ignored = Metrics.time("db.maintenance.wal_checkpoint");
+                 Cursor cursor = database.query("PRAGMA wal_checkpoint(PASSIVE)")) {
+                if (cursor.moveToFirst() && cursor.getInt(0) != 0) {
+                    Log.w(TAG, "WAL checkpoint was blocked by an active reader");
+                }
+            }
+        });
+    }
+
+    // The cursor survives between idle runs, so a backfill that is interrupted resumes after the last
+    // row it reached instead of scanning the table from the start again.
+    private void runBatches(String doneKey, String cursorKey, String metric, BatchStep step) {
+        if (prefs.getBoolean(doneKey, false)) return;
+        int steps = 0;
+        int[] cursor = {prefs.getInt(cursorKey, 0)};
+        while (steps < MAX_BATCH_STEPS && isIdle()) {
+            int afterId = cursor[0];
+            boolean done = submit(false, () -> {
+                try (Metrics.Timer ignored = Metrics.time(metric)) {
+                    cursor[0] = step.run(afterId, BATCH_ROWS);
+                }
+            });
+            if (!done) {
+                prefs.edit().putInt(cursorKey, afterId).apply();
+                return;
+            }
+            if (cursor[0] == 0) {
+                prefs.edit().putBoolean(doneKey, true).remove(cursorKey).apply();
+                return;
+            }
+            synchronized (lock) {
+                writesSinceCheckpoint += BATCH_ROWS;
+            }
+            steps++;
+        }
+        prefs.edit().putInt(cursorKey, cursor[0]).apply();
+        scheduleIdle();
+    }
+
+    private void vacuumIncrementally(SupportSQLiteDatabase database) {
+        if (queryLong(database, "PRAGMA auto_vacuum") != AUTO_VACUUM_INCREMENTAL) return;
+        int steps = 0;
+        while (steps < MAX_VACUUM_STEPS && isIdle()
+                && queryLong(database, "PRAGMA freelist_count") >= VACUUM_MIN_FREE_PAGES) {
+            boolean done = submit(false, () -> {
+                try (Metrics.Timer ignored = Metrics.time("db.maintenance.incremental_vacuum");
+                     Cursor cursor = database.query("PRAGMA incremental_vacuum(" + VACUUM_STEP_PAGES + ")")) {
+                    cursor.getCount();
+                }
+            });
+            if (!done) return;
+            steps++;
+        }
+        if (steps > 0) checkpoint(database);
+        if (steps == MAX_VACUUM_STEPS) scheduleIdle();
+    }
+
+    private void optimizeIfDue(SupportSQLiteDatabase database) {
+        long now = System.currentTimeMillis();
+        if (now - prefs.getLong(KEY_LAST_OPTIMIZE, 0) < OPTIMIZE_INTERVAL_MS || !isIdle()) return;
+        boolean done = submit(true, () -> {
+            try (Metrics.Timer ignored = Metrics.time("db.maintenance.optimize")) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                    try (Cursor cursor = database.query("PRAGMA optimize")) {
+                        cursor.getCount();
+                    }
+                } else {
+                    database.execSQL("ANALYZE");
+                }
+            }
+        });
+        if (done) prefs.edit().putLong(KEY_LAST_OPTIMIZE, now).apply();
+    }
+
+    // Maintenance goes through the single writer like every other write: batch work as background
+    // transactions, and statements that cannot run in a transaction exclusively on the writer thread.
+    private boolean submit(boolean exclusive, Runnable task) {
+        CountDownLatch done = new CountDownLatch(1);
+        boolean[] committed = new boolean[1];
+        DatabaseScheduler.WriteCallback callback = new DatabaseScheduler.WriteCallback() {
+            @Override
+            public void onWriteCommitted() {
+                committed[0] = true;
+                done.countDown();
+            }
+
+            @Override
+            public void onWriteFailed(RuntimeException e) {
+                done.countDown();
+            }
+        };
+        if (exclusive) {
+            scheduler.runExclusive(task, callback);
+        } else {
+            scheduler.write(DatabaseScheduler.PRIORITY_BACKGROUND, task, callback);
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return committed[0];
+    }
+
+    public Stats getStats() {
+        SupportSQLiteDatabase database = db.getOpenHelper().getReadableDatabase();
+        File wal = new File(databaseFile.getPath() + "-wal");
+        return new Stats(databaseFile.length(), wal.length(),
+                queryLong(database, "PRAGMA page_size"),
+                queryLong(database, "PRAGMA page_count"),
+                queryLong(database, "PRAGMA freelist_count"),
+                (int) queryLong(database, "PRAGMA auto_vacuum"));
+    }
+
+    public static String format(Stats stats) {
+        return "حجم پایگاه داده: " + stats.fileBytes / 1024 + " کیلوبایت"
+                + "\nحجم WAL: " + stats.walBytes / 1024 + " کیلوبایت"
+                + "\nصفحه‌ها: " + stats.pageCount + " × " + stats.pageSize + " بایت"
+                + "\nصفحه‌های آزاد: " + stats.freelistCount
+                + "\nauto_vacuum: " + stats.autoVacuum;
+    }
+
+    private static long queryLong(SupportSQLiteDatabase database, String sql) {
+        try (Cursor cursor = database.query(sql)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package ai.chat;
+
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Spannable;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.BackgroundColorSpan;
+import android.text.style.BulletSpan;
+import android.text.style.LeadingMarginSpan;
+import android.text.style.QuoteSpan;
+import android.text.style.RelativeSizeSpan;
+import android.text.style.StyleSpan;
+import android.text.style.TypefaceSpan;
+import android.util.LruCache;
+import android.widget.TextView;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class MarkdownRenderer {
+
+    private static final int CACHE_MAX_CHARS = 2 * 1024 * 1024;
+    private static final int CODE_BACKGROUND = 0xFF0F241B;
+    private static final int ACCENT = 0xFF00FFCC;
+    private static final int INDENT = 24;
+
+    private static final ExecutorService renderExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "markdown-render");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<Message, StreamState> streams = new WeakHashMap<>();
+    private final LruCache<String, CharSequence> cache = new LruCache<String, CharSequence>(CACHE_MAX_CHARS) {
+        @Override
+        protected int sizeOf(String key, CharSequence value) {
+            return value.length();
+        }
+    };
+
+    // Lets a TextView hold the streaming builder itself instead of copying it on every setText.
+    private static final Spannable.Factory NO_COPY = new Spannable.Factory() {
+        @Override
+        public Spannable newSpannable(CharSequence source) {
+            return source instanceof Spannable ? (Spannable) source : super.newSpannable(source);
+        }
+    };
+
+    private static class StreamState {
+        final SpannableStringBuilder rendered = new SpannableStringBuilder();
+        String source = "";
+        int tailStart;
+        int stableLength;
+    }
+
+    public void render(TextView textView, Message message) {
+        String text = message.getText();
+        if (message.getStatus() == Message.STATUS_STREAMING) {
+            textView.setTag(R.id.markdown_key, null);
+            try (Metrics.Timer ignored = Metrics.time("markdown.render_tail")) {
+                SpannableStringBuilder rendered = renderStreaming(message, text);
+                // The view already tracks edits to the builder it holds and relays them out itself.
+                if (textView.getText() != rendered) {
+                    textView.setSpannableFactory(NO_COPY);
+                    textView.setText(rendered, TextView.BufferType.SPANNABLE);
+                }
+            }
+            return;
+        }
+
+        String key = message.getId() + ":" + text.length() + ":" + text.hashCode();
+        textView.setTag(R.id.markdown_key, key);
+        CharSequence cached = cache.get(key);
+        StreamState stream = removeStream(message);
+        if (cached != null) {
+            applyText(textView, cached);
+            return;
+        }
+
+        textView.setText(stream != null && text.startsWith(stream.source) ? renderStream(stream, text) : text);
+
+        PrecomputedTextCompat.Params params = TextViewCompat.getTextMetricsParams(textView);
+        renderExecutor.execute(() -> {
+            PrecomputedTextCompat precomputed;
+            try (Metrics.Timer ignored = Metrics.time("markdown.render")) {
+                precomputed = PrecomputedTextCompat.create(renderSegment(text, 0, text.length()), params);
+            }
+            cache.put(key, precomputed);
+            mainHandler.post(() -> {
+                if (key.equals(textView.getTag(R.id.markdown_key))) {
+                    applyText(textView, precomputed);
+                }
+            });
+        });
+    }
+
+    private SpannableStringBuilder renderStreaming(Message message, String text) {
+        StreamState state = streams.get(message);
+        if (state == null || !text.startsWith(state.source)) {
+            state = new StreamState();
+            streams.put(message, state);
+        }
+        return renderStream(state, text);
+    }
+
+    // The finished row is a copy of the streamed one, so it is matched by id as well.
+    private StreamState removeStream(Message message) {
+        StreamState state = streams.remove(message);
+        if (state != null || message.getId() == 0) return state;
+        for (Map.Entry<Message, StreamState> entry : streams.entrySet()) {
+            if (entry.getKey().getId() == message.getId()) {
+                streams.remove(entry.getKey());
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static SpannableStringBuilder renderStream(StreamState state, String text) {
+        SpannableStringBuilder rendered = state.rendered;
+        int boundary = findTailStart(text, state.tailStart);
+        if (boundary > state.tailStart) {
+            rendered.replace(state.stableLength, rendered.length(), renderSegment(text, state.tailStart, boundary));
+            state.stableLength = rendered.length();
+            state.tailStart = boundary;
+        }
+        state.source = text;
+
+        rendered.replace(state.stableLength, rendered.length(), renderSegment(text, boundary, text.length()));
+        return rendered;
+    }
+
+    private static void applyText(TextView textView, CharSequence text) {
+        if (text instanceof PrecomputedTextCompat) {
+            try {
+                TextViewCompat.setPrecomputedText(textView, (PrecomputedTextCompat) text);
+                return;
+            } catch (IllegalArgumentException e) {
+                // Metrics differ from the view the text was measured for.
+            }
+        }
+        textView.setText(text);
+    }
+
+    static int findTailStart(String text, int from) {
+        int boundary = from;
+        boolean inFence = false;
+        int lineStart = from;
+        while (true) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd == -1) break;
+            String line = text.substring(lineStart, lineEnd).trim();
+            if (line.startsWith("```")) {
+                inFence = !inFence;
+                if (!inFence) boundary = lineEnd + 1;
+            } else if (!inFence && line.isEmpty()) {
+                boundary = lineEnd + 1;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return boundary;
+    }
+
+    static SpannableStringBuilder renderSegment(String text, int start, int end) {
+        SpannableStringBuilder out = new SpannableStringBuilder();
+        boolean inFence = false;
+        int fenceStart = 0;
+        int lineStart = start;
+        while (lineStart < end) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd == -1 || lineEnd > end) lineEnd = end;
+            String line = text.substring(lineStart, lineEnd);
+            boolean lastLine = lineEnd >= end;
+
+            if (line.trim().startsWith("```")) {
+                if (inFence) {
+                    applyCode(out, fenceStart, out.length());
+                } else {
+                    fenceStart = out.length();
+                }
+                inFence = !inFence;
+            } else {
+                if (inFence) {
+                    out.append(line);
+                } else {
+                    appendLine(out, line);
+                }
+                if (!lastLine) out.append('\n');
+            }
+            lineStart = lineEnd + 1;
+        }
+        if (inFence) {
+            applyCode(out, fenceStart, out.length());
+        }
+        return out;
+    }
+
+    private static void appendLine(SpannableStringBuilder out, String line) {
+        int start = out.length();
+        String trimmed = line.trim();
+
+        int level = 0;
+        while (level < trimmed.length() && level < 6 && trimmed.charAt(level) == '#') level++;
+        if (level > 0 && level < trimmed.length() && trimmed.charAt(level) == ' ') {
+            appendInline(out, trimmed.substring(level + 1));
+            setSpan(out, new StyleSpan(Typeface.BOLD), start);
+            setSpan(out, new RelativeSizeSpan(1.5f - 0.1f * level), start);
+            return;
+        }
+
+        if (trimmed.startsWith("- ") || trimmed.startsWith("* ") || trimmed.startsWith("+ ")) {
+            appendInline(out, trimmed.substring(2));
+            setSpan(out, new BulletSpan(INDENT / 2, ACCENT), start);
+            return;
+        }
+
+        int digits = 0;
+        while (digits < trimmed.length() && Character.isDigit(trimmed.charAt(digits))) digits++;
+        if (digits > 0 && trimmed.startsWith(". ", digits)) {
+            out.append(trimmed, 0, digits + 2);
+            appendInline(out, trimmed.substring(digits + 2));
+            setSpan(out, new LeadingMarginSpan.Standard(INDENT / 2), start);
+            return;
+        }
+
+        if (trimmed.startsWith(">")) {
+            appendInline(out, trimmed.substring(1).trim());
+            setSpan(out, new QuoteSpan(ACCENT), start);
+            return;
+        }
+
+        appendInline(out, line);
+    }
+
+    private static void appendInline(SpannableStringBuilder out, String text) {
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '`') {
+                int end = text.indexOf('`', i + 1);
+                if (end > i + 1) {
+                    int start = out.length();
+                    out.append(text, i + 1, end);
+                    applyCode(out, start, out.length());
+                    i = end + 1;
+                    continue;
+                }
+            } else if (c == '*' && text.startsWith("**", i)) {
+                int end = text.indexOf("**", i + 2);
+                if (end > i + 2) {
+                    int start = out.length();
+                    appendInline(out, text.substring(i + 2, end));
+                    setSpan(out, new StyleSpan(Typeface.BOLD), start);
+                    i = end + 2;
+                    continue;
+                }
+            } else if ((c == '*' || c == '_') && i + 1 < text.length()
+                    && !Character.isWhitespace(text.charAt(i + 1))
+                    && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)))) {
+                int end = text.indexOf(c, i + 1);
+                if (end > i + 1) {
+                    int start = out.length();
+                    appendInline(out, text.substring(i + 1, end));
+                    setSpan(out, new StyleSpan(Typeface.ITALIC), start);
+                    i = end + 1;
+                    continue;
+                }
+            }
+            out.append(c);
+            i++;
+        }
+    }
+
+    private static void applyCode(SpannableStringBuilder out, int start, int end) {
+        if (end <= start) return;
+        out.setSpan(new TypefaceSpan("monospace"), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        out.setSpan(new BackgroundColorSpan(CODE_BACKGROUND), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        out.setSpan(new RelativeSizeSpan(0.9f), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+    }
+
+    private static void setSpan(SpannableStringBuilder out, Object span, int start) {
+        if (out.length() > start) {
+            out.setSpan(span, start, out.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+    }
+}
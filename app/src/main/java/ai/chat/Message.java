@@ -4,39 +4,208 @@ import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.ForeignKey;
 import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Entity(tableName = "messages",
         foreignKeys = @ForeignKey(entity = ChatSession.class,
                 parentColumns = "id",
                 childColumns = "session_id",
-                onDelete = ForeignKey.CASCADE))
+                onDelete = ForeignKey.CASCADE),
+        indices = @Index(value = {"session_id", "id"}))
 public class Message {
 
+    public static final int TYPE_USER = 0;
+    public static final int TYPE_AI = 1;
+    public static final int STATUS_COMPLETE = 0;
+    public static final int STATUS_STREAMING = 1;
+    public static final int CHUNK_SIZE = 16 * 1024;
+    public static final int CHUNK_THRESHOLD = 64 * 1024;
+    public static final int PREVIEW_CHARS = 4 * 1024;
+
     @PrimaryKey(autoGenerate = true)
     public int id;
 
-    @ColumnInfo(name = "session_id", index = true)
+    @ColumnInfo(name = "session_id")
     public long sessionId;
 
-    private String text;
+    @ColumnInfo(name = "text")
+    private String storedText;
+
+    @ColumnInfo(typeAffinity = ColumnInfo.BLOB)
+    private byte[] body;
+
+    @ColumnInfo(defaultValue = "0")
+    private int codec;
+
     private int type;
 
+    @ColumnInfo(defaultValue = "0")
+    private int status;
+
+    @ColumnInfo(defaultValue = "0")
+    private boolean cached;
+
+    @ColumnInfo(name = "chunk_count", defaultValue = "0")
+    private int chunkCount;
+
+    @ColumnInfo(name = "token_count", defaultValue = "0")
+    private int tokenCount;
+
+    @Ignore
+    private boolean expanded;
+
+    @Ignore
+    private String text;
+
+    @Ignore
+    private boolean decoded;
+
+    @Ignore
+    private boolean encoded = true;
+
+    // Identifies a row created on screen before the writer has assigned its id.
+    @Ignore
+    private long localKey;
+
+    private static final AtomicLong nextLocalKey = new AtomicLong(1);
+
     public Message() {}
 
     @Ignore
     public Message(long sessionId, String text, int type) {
         this.sessionId = sessionId;
-        this.text = text;
         this.type = type;
+        this.localKey = nextLocalKey.getAndIncrement();
+        setText(text);
     }
 
     public int getId() { return id; }
     public void setId(int id) { this.id = id; }
+    public long getLocalKey() { return localKey; }
     public long getSessionId() { return sessionId; }
     public void setSessionId(long sessionId) { this.sessionId = sessionId; }
-    public String getText() { return text; }
-    public void setText(String text) { this.text = text; }
+    public synchronized String getText() {
+        if (!decoded) {
+            text = MessageCodec.decode(storedText, body, codec);
+            decoded = true;
+        }
+        return text;
+    }
+
+    public synchronized void setText(String text) {
+        this.text = text;
+        decoded = true;
+        encoded = false;
+    }
+
+    public synchronized String getStoredText() {
+        encode();
+        return storedText;
+    }
+
+    public synchronized void setStoredText(String storedText) {
+        this.storedText = storedText;
+        decoded = false;
+    }
+
+    public synchronized byte[] getBody() {
+        encode();
+        return body;
+    }
+
+    public synchronized void setBody(byte[] body) {
+        this.body = body;
+        decoded = false;
+    }
+
+    public synchronized int getCodec() {
+        encode();
+        return codec;
+    }
+
+    public synchronized void setCodec(int codec) {
+        this.codec = codec;
+        decoded = false;
+    }
+
+    public synchronized int getTokenCount() {
+        return tokenCount;
+    }
+
+    public synchronized void setTokenCount(int tokenCount) {
+        this.tokenCount = tokenCount;
+    }
+
+    private void encode() {
+        if (encoded) return;
+        encoded = true;
+        MessageCodec.Encoded result = MessageCodec.encode(text);
+        storedText = result.text;
+        body = result.body;
+        codec = result.codec;
+    }
+
+    // The text was set in memory and its stored columns and token count have not been written yet.
+    synchronized boolean isTextChanged() {
+        return !encoded;
+    }
+
+    // The adapter diffs its current list against the submitted one, so an update goes in a new instance.
+    public synchronized Message copy() {
+        Message copy = new Message();
+        copy.id = id;
+        copy.sessionId = sessionId;
+        copy.storedText = storedText;
+        copy.body = body;
+        copy.codec = codec;
+        copy.type = type;
+        copy.status = status;
+        copy.cached = cached;
+        copy.chunkCount = chunkCount;
+        copy.tokenCount = tokenCount;
+        copy.expanded = expanded;
+        copy.text = text;
+        copy.decoded = decoded;
+        copy.encoded = encoded;
+        copy.localKey = localKey;
+        return copy;
+    }
+
+    public boolean hasSameText(Message other) {
+        if (this == other) return true;
+        byte[] mine = undecodedBody();
+        byte[] theirs = other.undecodedBody();
+        if (mine != null && theirs != null) return Arrays.equals(mine, theirs);
+        return getText().equals(other.getText());
+    }
+
+    private synchronized byte[] undecodedBody() {
+        return !decoded && codec == MessageCodec.DEFLATE ? body : null;
+    }
+
     public int getType() { return type; }
     public void setType(int type) { this.type = type; }
+    public int getStatus() { return status; }
+    public void setStatus(int status) { this.status = status; }
+    public boolean isCached() { return cached; }
+    public void setCached(boolean cached) { this.cached = cached; }
+    public int getChunkCount() { return chunkCount; }
+    public void setChunkCount(int chunkCount) { this.chunkCount = chunkCount; }
+    public boolean isExpanded() { return expanded; }
+    public void setExpanded(boolean expanded) { this.expanded = expanded; }
+
+    public boolean isTruncated() {
+        return chunkCount > 0 && !expanded;
+    }
+
+    static int chunkCount(int length) {
+        return length <= CHUNK_THRESHOLD ? 0 : (length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    static String preview(String text) {
+        return text.length() <= PREVIEW_CHARS ? text : text.substring(0, PREVIEW_CHARS);
+    }
 }
@@ -15,15 +15,22 @@ import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
+import java.util.Collections;
 import java.util.List;
 
 public class MessageAdapter extends ListAdapter<Message, MessageAdapter.MessageViewHolder> {
 
+    public static final String KEY_TEXT = "KEY_TEXT";
+
     private final Context context;
     private final OnMessageInteractionListener listener;
+    private final MarkdownRenderer markdownRenderer = new MarkdownRenderer();
+    private List<Message> latestList = Collections.emptyList();
 
     public interface OnMessageInteractionListener {
         void onMessageLongClick(Message message);
+        void onExpandMessage(Message message);
+        void onCopyMessage(Message message);
     }
 
     public MessageAdapter(Context context, OnMessageInteractionListener listener) {
@@ -32,6 +39,45 @@ public class MessageAdapter extends ListAdapter<Message, MessageAdapter.MessageV
         this.listener = listener;
     }
 
+    @Override
+    public void submitList(@Nullable List<Message> list) {
+        submitList(list, null);
+    }
+
+    @Override
+    public void submitList(@Nullable List<Message> list, @Nullable Runnable commitCallback) {
+        Metrics.Span span = Metrics.span("ui.submit_list");
+        latestList = list != null ? list : Collections.<Message>emptyList();
+        super.submitList(list, () -> {
+            span.end();
+            if (commitCallback != null) commitCallback.run();
+        });
+    }
+
+    // The list most recently submitted. getCurrentList() only catches up once the background diff has been
+    // applied, so edits that build a new list start from this one.
+    public List<Message> getLatestList() {
+        return latestList;
+    }
+
+    public int positionOf(Message message) {
+        return indexOf(getCurrentList(), message);
+    }
+
+    public int latestPositionOf(Message message) {
+        return indexOf(latestList, message);
+    }
+
+    private static int indexOf(List<Message> list, Message message) {
+        for (int i = list.size() - 1; i >= 0; i--) {
+            Message item = list.get(i);
+            if (item == message || (message.getId() != 0 && item.getId() == message.getId())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     @Override
     public int getItemViewType(int position) {
         return getItem(position).getType();
@@ -41,7 +87,7 @@ public class MessageAdapter extends ListAdapter<Message, MessageAdapter.MessageV
     @Override
     public MessageViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view;
-        if (viewType == MainActivity.MESSAGE_TYPE_USER) {
+        if (viewType == Message.TYPE_USER) {
             view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_message_user, parent, false);
         } else {
             view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_message_ai, parent, false);
@@ -54,10 +100,9 @@ public class MessageAdapter extends ListAdapter<Message, MessageAdapter.MessageV
         if (payloads.isEmpty()) {
             super.onBindViewHolder(holder, position, payloads);
         } else {
-            Bundle payload = (Bundle) payloads.get(0);
-            if (payload.containsKey("KEY_TEXT")) {
-                String newText = payload.getString("KEY_TEXT");
-                holder.messageText.setText(newText);
+            Bundle payload = (Bundle) payloads.get(payloads.size() - 1);
+            if (payload.containsKey(KEY_TEXT)) {
+                holder.bindText(getItem(position));
             }
         }
     }
@@ -71,15 +116,29 @@ public class MessageAdapter extends ListAdapter<Message, MessageAdapter.MessageV
     class MessageViewHolder extends RecyclerView.ViewHolder {
         TextView messageText;
         ImageView copyButton;
+        TextView cachedLabel;
+        TextView expandButton;
 
         public MessageViewHolder(@NonNull View itemView) {
             super(itemView);
             messageText = itemView.findViewById(R.id.textViewMessage);
             copyButton = itemView.findViewById(R.id.imageViewCopy);
+            cachedLabel = itemView.findViewById(R.id.textViewCached);
+            expandButton = itemView.findViewById(R.id.textViewExpand);
+        }
+
+        void bindText(Message message) {
+            if (message.getType() == Message.TYPE_AI) {
+                markdownRenderer.render(messageText, message);
+                cachedLabel.setVisibility(message.isCached() ? View.VISIBLE : View.GONE);
+                expandButton.setVisibility(message.isTruncated() ? View.VISIBLE : View.GONE);
+            } else {
+                messageText.setText(message.getText());
+            }
         }
 
         void bind(final Message message, final OnMessageInteractionListener listener) {
-            messageText.setText(message.getText());
+            bindText(message);
 
             itemView.setOnLongClickListener(v -> {
                 listener.onMessageLongClick(message);
@@ -87,34 +146,50 @@ public class MessageAdapter extends ListAdapter<Message, MessageAdapter.MessageV
             });
 
             copyButton.setOnClickListener(v -> {
-                ClipboardManager clipboard = (ClipboardManager) context.getSystemService(Context.CLIPBOARD_SERVICE);
-                ClipData clip = ClipData.newPlainText("chat_message", message.getText());
-                if (clipboard != null) {
-                    clipboard.setPrimaryClip(clip);
-                    Toast.makeText(context, "کپی شد!", Toast.LENGTH_SHORT).show();
+                if (message.isTruncated()) {
+                    listener.onCopyMessage(message);
+                } else {
+                    copyToClipboard(message.getText());
                 }
             });
+
+            if (expandButton != null) {
+                expandButton.setOnClickListener(v -> listener.onExpandMessage(message));
+            }
+        }
+    }
+
+    public void copyToClipboard(String text) {
+        ClipboardManager clipboard = (ClipboardManager) context.getSystemService(Context.CLIPBOARD_SERVICE);
+        ClipData clip = ClipData.newPlainText("chat_message", text);
+        if (clipboard != null) {
+            clipboard.setPrimaryClip(clip);
+            Toast.makeText(context, "کپی شد!", Toast.LENGTH_SHORT).show();
         }
     }
 
-    private static final DiffUtil.ItemCallback<Message> DIFF_CALLBACK =
+    static final DiffUtil.ItemCallback<Message> DIFF_CALLBACK =
             new DiffUtil.ItemCallback<Message>() {
                 @Override
                 public boolean areItemsTheSame(@NonNull Message oldItem, @NonNull Message newItem) {
-                    return oldItem.getId() == newItem.getId();
+                    if (oldItem.getId() != 0 && newItem.getId() != 0) return oldItem.getId() == newItem.getId();
+                    return oldItem.getLocalKey() != 0 && oldItem.getLocalKey() == newItem.getLocalKey();
                 }
 
                 @Override
                 public boolean areContentsTheSame(@NonNull Message oldItem, @NonNull Message newItem) {
-                    return oldItem.getText().equals(newItem.getText()) && oldItem.getId() == newItem.getId();
+                    return oldItem.getId() == newItem.getId() && oldItem.getStatus() == newItem.getStatus()
+                            && oldItem.isCached() == newItem.isCached()
+                            && oldItem.isTruncated() == newItem.isTruncated() && oldItem.hasSameText(newItem);
                 }
 
                 @Nullable
                 @Override
                 public Object getChangePayload(@NonNull Message oldItem, @NonNull Message newItem) {
-                    if (!oldItem.getText().equals(newItem.getText())) {
+                    if (oldItem.getStatus() != newItem.getStatus() || oldItem.isCached() != newItem.isCached()
+                            || oldItem.isTruncated() != newItem.isTruncated() || !oldItem.hasSameText(newItem)) {
                         Bundle diffBundle = new Bundle();
-                        diffBundle.putString("KEY_TEXT", newItem.getText());
+                        diffBundle.putString(KEY_TEXT, newItem.getText());
                         return diffBundle;
                     }
                     return null;
@@ -0,0 +1,56 @@
+package ai.chat;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+
+@Entity(tableName = "message_chunks",
+        primaryKeys = {"message_id", "seq"},
+        foreignKeys = @ForeignKey(entity = Message.class,
+                parentColumns = "id",
+                childColumns = "message_id",
+                onDelete = ForeignKey.CASCADE))
+public class MessageChunk {
+
+    @ColumnInfo(name = "message_id")
+    public int messageId;
+
+    public int seq;
+
+    private String text;
+
+    @ColumnInfo(typeAffinity = ColumnInfo.BLOB)
+    private byte[] body;
+
+    @ColumnInfo(defaultValue = "0")
+    private int codec;
+
+    public MessageChunk(int messageId, int seq, String text) {
+        this.messageId = messageId;
+        this.seq = seq;
+        this.text = text;
+    }
+
+    static MessageChunk encode(int messageId, int seq, String text) {
+        MessageCodec.Encoded encoded = MessageCodec.encode(text);
+        MessageChunk chunk = new MessageChunk(messageId, seq, encoded.text);
+        chunk.body = encoded.body;
+        chunk.codec = encoded.codec;
+        return chunk;
+    }
+
+    public String decodeText() {
+        return MessageCodec.decode(text, body, codec);
+    }
+
+    public int getMessageId() { return messageId; }
+    public void setMessageId(int messageId) { this.messageId = messageId; }
+    public int getSeq() { return seq; }
+    public void setSeq(int seq) { this.seq = seq; }
+    public String getText() { return text; }
+    public void setText(String text) { this.text = text; }
+    public byte[] getBody() { return body; }
+    public void setBody(byte[] body) { this.body = body; }
+    public int getCodec() { return codec; }
+    public void setCodec(int codec) { this.codec = codec; }
+}
@@ -0,0 +1,84 @@
+package ai.chat;
+
+import android.util.Log;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public final class MessageCodec {
+
+    public static final int PLAIN = 0;
+    public static final int DEFLATE = 1;
+
+    static final int COMPRESS_THRESHOLD = 2 * 1024;
+
+    private static final String TAG = "MessageCodec";
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    public static final class Encoded {
+        public final String text;
+        public final byte[] body;
+        public final int codec;
+
+        Encoded(String text, byte[] body, int codec) {
+            this.text = text;
+            this.body = body;
+            this.codec = codec;
+        }
+    }
+
+    private MessageCodec() {}
+
+    public static Encoded encode(String text) {
+        if (text == null || text.length() < COMPRESS_THRESHOLD) {
+            return new Encoded(text, null, PLAIN);
+        }
+        return new Encoded(null, deflate(text), DEFLATE);
+    }
+
+    public static String decode(String text, byte[] body, int codec) {
+        if (codec != DEFLATE || body == null) return text;
+        return inflate(body);
+    }
+
+    static byte[] deflate(String text) {
+        byte[] input = text.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 3);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static String inflate(byte[] body) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(body);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length * 4);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated message body");
+                }
+                out.write(buffer, 0, count);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            Log.e(TAG, "Failed to inflate message body: ", e);
+            return "";
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -3,9 +3,11 @@ package ai.chat;
 import androidx.room.Dao;
 import androidx.room.Delete;
 import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
 import androidx.room.Transaction;
 import androidx.room.Update;
+import java.util.ArrayList;
 import java.util.List;
 
 @Dao
@@ -14,22 +16,216 @@ public interface MessageDao {
     @Query("SELECT * FROM messages WHERE session_id = :sessionId ORDER BY id ASC")
     List<Message> getMessagesForSession(long sessionId);
 
+    @Query("SELECT * FROM messages WHERE session_id = :sessionId ORDER BY id DESC LIMIT :limit")
+    List<Message> getLatestMessages(long sessionId, int limit);
+
+    @Query("SELECT * FROM messages WHERE session_id = :sessionId AND id < :beforeId ORDER BY id DESC LIMIT :limit")
+    List<Message> getMessagesBefore(long sessionId, int beforeId, int limit);
+
+    @Query("SELECT * FROM messages WHERE session_id = :sessionId AND id > :afterId ORDER BY id ASC LIMIT :limit")
+    List<Message> getMessagesAfter(long sessionId, int afterId, int limit);
+
+    @Query("SELECT * FROM messages WHERE session_id = :sessionId AND id > :afterId AND id <= :maxId "
+            + "ORDER BY id ASC LIMIT :limit")
+    List<Message> getMessagesInRange(long sessionId, int afterId, int maxId, int limit);
+
+    @Query("SELECT COALESCE(MAX(id), 0) FROM messages")
+    int getMaxMessageId();
+
+    @Query("SELECT * FROM messages WHERE session_id = :sessionId AND status = " + Message.STATUS_STREAMING
+            + " AND id NOT IN (SELECT placeholder_message_id FROM outbox) ORDER BY id DESC LIMIT 1")
+    Message getInterruptedMessage(long sessionId);
+
+    @Query("SELECT * FROM messages WHERE id = :id")
+    Message getMessage(int id);
+
+    @Query("SELECT * FROM messages WHERE session_id = :sessionId AND id < :beforeId AND type = " + Message.TYPE_USER + " ORDER BY id DESC LIMIT 1")
+    Message getPreviousUserMessage(long sessionId, int beforeId);
+
+    @Query("UPDATE messages SET text = :text, body = :body, codec = :codec, status = :status, cached = :cached, "
+            + "chunk_count = :chunkCount, token_count = :tokenCount WHERE id = :id")
+    void updateMessageBody(int id, String text, byte[] body, int codec, int status, boolean cached, int chunkCount,
+                           int tokenCount);
+
+    @Query("UPDATE messages SET text = :text, body = :body, codec = :codec WHERE id = :id")
+    void updateEncodedText(int id, String text, byte[] body, int codec);
+
+    // The backfill scans walk the primary key from afterId, so each batch reads on from where the last one stopped.
+    @Query("SELECT * FROM messages WHERE id > :afterId AND status = " + Message.STATUS_COMPLETE
+            + " AND (chunk_count > 0 OR (codec = " + MessageCodec.PLAIN + " AND length(text) >= :minLength))"
+            + " ORDER BY id ASC LIMIT :limit")
+    List<Message> getUncompressedMessages(int afterId, int minLength, int limit);
+
+    @Query("SELECT * FROM message_chunks WHERE message_id = :messageId AND codec = " + MessageCodec.PLAIN
+            + " AND length(text) >= :minLength")
+    List<MessageChunk> getUncompressedChunks(int messageId, int minLength);
+
+    @Query("SELECT * FROM messages WHERE id > :afterId AND token_count = 0 AND status = " + Message.STATUS_COMPLETE
+            + " ORDER BY id ASC LIMIT :limit")
+    List<Message> getUncountedMessages(int afterId, int limit);
+
+    @Query("UPDATE messages SET token_count = :tokenCount WHERE id = :id")
+    void updateTokenCount(int id, int tokenCount);
+
+    @Query("DELETE FROM messages_fts WHERE docid = :messageId")
+    void unindex(int messageId);
+
+    @Query("INSERT INTO messages_fts(docid, text) VALUES (:messageId, :text)")
+    void insertIndex(int messageId, String text);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertChunks(List<MessageChunk> chunks);
+
+    @Query("DELETE FROM message_chunks WHERE message_id = :messageId AND seq >= :fromSeq")
+    void deleteChunksFrom(int messageId, int fromSeq);
+
+    @Query("SELECT * FROM message_chunks WHERE message_id = :messageId ORDER BY seq ASC")
+    List<MessageChunk> getChunks(int messageId);
+
+    @Query("UPDATE messages SET status = :status WHERE id = :id")
+    void updateMessageStatus(int id, int status);
+
+    @Query("UPDATE chat_sessions SET lastModified = :lastModified WHERE id = :sessionId")
+    void touchSession(long sessionId, long lastModified);
+
     @Insert
     long insertMessageAndGetId(Message message);
 
     @Update
-    void updateMessage(Message message);
+    int updateMessage(Message message);
 
     @Delete
-    void deleteMessage(Message message);
+    void deleteMessageRow(Message message);
+
+    @Transaction
+    default void deleteMessage(Message message) {
+        unindex(message.getId());
+        deleteMessageRow(message);
+    }
 
     @Transaction
     default void insertOrUpdate(Message message) {
-        if (message.id == 0) {
+        if (message.isTextChanged() && message.getChunkCount() == 0) {
+            String text = message.getText();
+            message.setTokenCount(text != null ? ConversationContextBuilder.estimateTokens(text) : 0);
+        }
+        if (message.id == 0 || updateMessage(message) == 0) {
             long newId = insertMessageAndGetId(message);
             message.setId((int) newId);
-        } else {
-            updateMessage(message);
         }
+        if (message.getStatus() == Message.STATUS_COMPLETE && message.getChunkCount() == 0) {
+            indexText(message.getId(), message.getText());
+        }
+    }
+
+    default void indexText(int messageId, String text) {
+        unindex(messageId);
+        insertIndex(messageId, text);
+    }
+
+    @Transaction
+    default void completeMessage(int id) {
+        updateMessageStatus(id, Message.STATUS_COMPLETE);
+        Message message = getMessage(id);
+        if (message == null) return;
+        String text = getFullText(message);
+        updateTokenCount(id, ConversationContextBuilder.estimateTokens(text));
+        indexText(id, text);
+    }
+
+    @Transaction
+    default void appendMessage(Message message) {
+        insertOrUpdate(message);
+        touchSession(message.getSessionId(), System.currentTimeMillis());
+    }
+
+    @Transaction
+    default void appendExchange(Message prompt, Message placeholder) {
+        insertOrUpdate(prompt);
+        insertOrUpdate(placeholder);
+        touchSession(prompt.getSessionId(), System.currentTimeMillis());
+    }
+
+    // Streaming checkpoints store plain chunks from fromChunk on; the complete text re-encodes every chunk once.
+    @Transaction
+    default int storeText(int messageId, String text, int status, boolean cached, int fromChunk) {
+        boolean complete = status == Message.STATUS_COMPLETE;
+        int chunkCount = Message.chunkCount(text.length());
+        int tokenCount = complete ? ConversationContextBuilder.estimateTokens(text) : 0;
+        if (complete) indexText(messageId, text);
+        if (chunkCount == 0) {
+            deleteChunksFrom(messageId, 0);
+            writeMessageBody(messageId, text, status, cached, 0, tokenCount);
+            return 0;
+        }
+
+        int firstChunk = complete ? 0 : fromChunk;
+        List<MessageChunk> chunks = new ArrayList<>(chunkCount - firstChunk);
+        for (int seq = firstChunk; seq < chunkCount; seq++) {
+            int start = seq * Message.CHUNK_SIZE;
+            int end = Math.min(text.length(), start + Message.CHUNK_SIZE);
+            String chunk = text.substring(start, end);
+            chunks.add(complete ? MessageChunk.encode(messageId, seq, chunk)
+                    : new MessageChunk(messageId, seq, chunk));
+        }
+        insertChunks(chunks);
+        deleteChunksFrom(messageId, chunkCount);
+        writeMessageBody(messageId, Message.preview(text), status, cached, chunkCount, tokenCount);
+        return text.length() / Message.CHUNK_SIZE;
+    }
+
+    default String getFullText(Message message) {
+        if (message.getChunkCount() == 0) return message.getText();
+        StringBuilder text = new StringBuilder(message.getChunkCount() * Message.CHUNK_SIZE);
+        for (MessageChunk chunk : getChunks(message.getId())) {
+            text.append(chunk.decodeText());
+        }
+        return text.toString();
+    }
+
+    default void writeMessageBody(int id, String text, int status, boolean cached, int chunkCount, int tokenCount) {
+        if (status == Message.STATUS_STREAMING) {
+            updateMessageBody(id, text, null, MessageCodec.PLAIN, status, cached, chunkCount, tokenCount);
+            return;
+        }
+        MessageCodec.Encoded encoded = MessageCodec.encode(text);
+        updateMessageBody(id, encoded.text, encoded.body, encoded.codec, status, cached, chunkCount, tokenCount);
+    }
+
+    // Returns the last message id it looked at, or 0 when none are left.
+    @Transaction
+    default int compressStoredText(int afterId, int limit) {
+        List<Message> messages = getUncompressedMessages(afterId, MessageCodec.COMPRESS_THRESHOLD, limit);
+        for (Message message : messages) {
+            String text = message.getText();
+            if (message.getCodec() == MessageCodec.PLAIN && text != null
+                    && text.length() >= MessageCodec.COMPRESS_THRESHOLD) {
+                MessageCodec.Encoded encoded = MessageCodec.encode(text);
+                updateEncodedText(message.getId(), encoded.text, encoded.body, encoded.codec);
+            }
+            if (message.getChunkCount() == 0) continue;
+            List<MessageChunk> chunks = getUncompressedChunks(message.getId(), MessageCodec.COMPRESS_THRESHOLD);
+            for (int i = 0; i < chunks.size(); i++) {
+                MessageChunk chunk = chunks.get(i);
+                chunks.set(i, MessageChunk.encode(chunk.getMessageId(), chunk.getSeq(), chunk.getText()));
+            }
+            if (!chunks.isEmpty()) insertChunks(chunks);
+        }
+        return messages.isEmpty() ? 0 : messages.get(messages.size() - 1).getId();
+    }
+
+    // Rows written before token_count existed, plus compressed or chunked rows whose full text the migration
+    // could not index in SQL. Returns the last message id it looked at, or 0 when none are left.
+    @Transaction
+    default int indexStoredText(int afterId, int limit) {
+        List<Message> messages = getUncountedMessages(afterId, limit);
+        for (Message message : messages) {
+            String text = getFullText(message);
+            updateTokenCount(message.getId(), ConversationContextBuilder.estimateTokens(text));
+            if (message.getCodec() != MessageCodec.PLAIN || message.getChunkCount() > 0) {
+                indexText(message.getId(), text);
+            }
+        }
+        return messages.isEmpty() ? 0 : messages.get(messages.size() - 1).getId();
     }
 }
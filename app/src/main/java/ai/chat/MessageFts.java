@@ -0,0 +1,14 @@
+package ai.chat;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+
+@Fts4(tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "messages_fts")
+public class MessageFts {
+
+    @ColumnInfo(name = "text")
+    public String text;
+}
@@ -0,0 +1,223 @@
+package ai.chat;
+
+import android.os.Handler;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MessagePager extends RecyclerView.OnScrollListener {
+
+    public static final int PAGE_SIZE = 50;
+    private static final int MAX_WINDOW_SIZE = PAGE_SIZE * 4;
+    private static final int PREFETCH_DISTANCE = 10;
+
+    private final MessageDao messageDao;
+    private final DatabaseScheduler scheduler;
+    private final Handler mainHandler;
+    private final MessageAdapter adapter;
+    private LiveTextSource liveTextSource;
+
+    private long sessionId = -1;
+    private int generation;
+    private boolean loading;
+    private boolean hasOlder;
+    private boolean hasNewer;
+
+    public interface LiveTextSource {
+        String getLiveText(int messageId);
+    }
+
+    public MessagePager(MessageDao messageDao, DatabaseScheduler scheduler, Handler mainHandler, MessageAdapter adapter) {
+        this.messageDao = messageDao;
+        this.scheduler = scheduler;
+        this.mainHandler = mainHandler;
+        this.adapter = adapter;
+    }
+
+    public void setLiveTextSource(LiveTextSource liveTextSource) {
+        this.liveTextSource = liveTextSource;
+    }
+
+    public void reset() {
+        generation++;
+        sessionId = -1;
+        loading = false;
+        hasOlder = false;
+        hasNewer = false;
+        adapter.submitList(new ArrayList<>());
+    }
+
+    public boolean isAtLatest() {
+        return !hasNewer;
+    }
+
+    public void loadLatest(long sessionId, Runnable onLoaded) {
+        loadLatest(sessionId, onLoaded, false);
+    }
+
+    public void loadLatestAfterWrites(long sessionId, Runnable onLoaded) {
+        loadLatest(sessionId, onLoaded, true);
+    }
+
+    private void loadLatest(long sessionId, Runnable onLoaded, boolean afterWrites) {
+        int token = ++generation;
+        this.sessionId = sessionId;
+        loading = true;
+        Runnable load = () -> {
+            List<Message> page = messageDao.getLatestMessages(sessionId, PAGE_SIZE);
+            Collections.reverse(page);
+            mainHandler.post(() -> {
+                if (token != generation) return;
+                loading = false;
+                hasOlder = page.size() == PAGE_SIZE;
+                hasNewer = false;
+                adapter.submitList(reuseLoaded(page), onLoaded);
+            });
+        };
+        if (afterWrites) {
+            scheduler.readAfterWrites(DatabaseScheduler.PRIORITY_UI, load);
+        } else {
+            scheduler.read(DatabaseScheduler.PRIORITY_UI, load);
+        }
+    }
+
+    public void showLatest(long sessionId, List<Message> page, Runnable onLoaded) {
+        generation++;
+        this.sessionId = sessionId;
+        loading = false;
+        hasOlder = page.size() == PAGE_SIZE;
+        hasNewer = false;
+        adapter.submitList(reuseLoaded(page), onLoaded);
+    }
+
+    public void loadAround(long sessionId, int messageId, Runnable onLoaded) {
+        int token = ++generation;
+        this.sessionId = sessionId;
+        loading = true;
+        scheduler.read(DatabaseScheduler.PRIORITY_UI, () -> {
+            List<Message> older = messageDao.getMessagesBefore(sessionId, messageId + 1, PAGE_SIZE);
+            List<Message> newer = messageDao.getMessagesAfter(sessionId, messageId, PAGE_SIZE);
+            Collections.reverse(older);
+            List<Message> window = new ArrayList<>(older.size() + newer.size());
+            window.addAll(older);
+            window.addAll(newer);
+            mainHandler.post(() -> {
+                if (token != generation) return;
+                loading = false;
+                hasOlder = older.size() == PAGE_SIZE;
+                hasNewer = newer.size() == PAGE_SIZE;
+                adapter.submitList(reuseLoaded(window), onLoaded);
+            });
+        });
+    }
+
+    // Pages are merged into the list most recently submitted, on the main thread, so an append or page
+    // load that is still diffing is neither dropped nor duplicated.
+    private void loadOlder() {
+        List<Message> current = adapter.getLatestList();
+        if (current.isEmpty()) return;
+        int token = generation;
+        long session = sessionId;
+        int oldestId = current.get(0).getId();
+        loading = true;
+        scheduler.read(DatabaseScheduler.PRIORITY_UI, () -> {
+            List<Message> page = messageDao.getMessagesBefore(session, oldestId, PAGE_SIZE);
+            Collections.reverse(page);
+            mainHandler.post(() -> {
+                if (token != generation) return;
+                loading = false;
+                List<Message> latest = adapter.getLatestList();
+                if (latest.isEmpty() || latest.get(0).getId() != oldestId) return;
+                hasOlder = page.size() == PAGE_SIZE;
+
+                List<Message> window = new ArrayList<>(page.size() + latest.size());
+                window.addAll(reuseLoaded(page));
+                window.addAll(latest);
+                if (window.size() > MAX_WINDOW_SIZE) {
+                    window = new ArrayList<>(window.subList(0, MAX_WINDOW_SIZE));
+                    hasNewer = true;
+                }
+                adapter.submitList(window);
+            });
+        });
+    }
+
+    private void loadNewer() {
+        List<Message> current = adapter.getLatestList();
+        if (current.isEmpty()) return;
+        int token = generation;
+        long session = sessionId;
+        int newestId = newestId(current);
+        loading = true;
+        scheduler.read(DatabaseScheduler.PRIORITY_UI, () -> {
+            List<Message> page = messageDao.getMessagesAfter(session, newestId, PAGE_SIZE);
+            mainHandler.post(() -> {
+                if (token != generation) return;
+                loading = false;
+                hasNewer = page.size() == PAGE_SIZE;
+
+                List<Message> latest = adapter.getLatestList();
+                int latestId = newestId(latest);
+                List<Message> window = new ArrayList<>(latest.size() + page.size());
+                window.addAll(latest);
+                for (Message message : reuseLoaded(page)) {
+                    if (message.getId() > latestId) window.add(message);
+                }
+                if (window.size() > MAX_WINDOW_SIZE) {
+                    window = new ArrayList<>(window.subList(window.size() - MAX_WINDOW_SIZE, window.size()));
+                    hasOlder = true;
+                }
+                adapter.submitList(window);
+            });
+        });
+    }
+
+    private static int newestId(List<Message> window) {
+        int newest = 0;
+        for (int i = window.size() - 1; i >= 0 && newest == 0; i--) {
+            newest = window.get(i).getId();
+        }
+        return newest;
+    }
+
+    private List<Message> reuseLoaded(List<Message> page) {
+        List<Message> current = adapter.getLatestList();
+        Map<Integer, Message> loaded = new HashMap<>();
+        for (Message message : current) {
+            loaded.put(message.getId(), message);
+        }
+        List<Message> merged = new ArrayList<>(page.size());
+        for (Message message : page) {
+            Message existing = loaded.get(message.getId());
+            if (existing != null) {
+                merged.add(existing);
+                continue;
+            }
+            if (message.getStatus() == Message.STATUS_STREAMING && liveTextSource != null) {
+                String live = liveTextSource.getLiveText(message.getId());
+                if (live != null && !live.isEmpty()) message.setText(live);
+            }
+            merged.add(message);
+        }
+        return merged;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        if (loading || sessionId == -1 || dy == 0) return;
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        if (layoutManager == null) return;
+
+        if (dy < 0 && hasOlder && layoutManager.findFirstVisibleItemPosition() <= PREFETCH_DISTANCE) {
+            loadOlder();
+        } else if (dy > 0 && hasNewer
+                && layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - 1 - PREFETCH_DISTANCE) {
+            loadNewer();
+        }
+    }
+}
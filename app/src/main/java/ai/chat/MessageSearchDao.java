@@ -0,0 +1,70 @@
+package ai.chat;
+
+import android.database.Cursor;
+import androidx.room.Dao;
+import androidx.room.Query;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+@Dao
+public interface MessageSearchDao {
+
+    int CANDIDATE_LIMIT = 1000;
+
+    // FTS4 walks its doclists in docid order, so the newest matches come cheaply and the scan stops at the
+    // limit however common the term is.
+    @Query("SELECT docid, matchinfo(messages_fts, 'pcnalx') FROM messages_fts WHERE messages_fts MATCH :match "
+            + "ORDER BY docid DESC LIMIT :limit")
+    Cursor findMatches(String match, int limit);
+
+    @Query("SELECT messages.id AS messageId, messages.session_id AS sessionId, chat_sessions.title AS sessionTitle, "
+            + "snippet(messages_fts, '«', '»', '…', -1, 12) AS snippet, "
+            + "matchinfo(messages_fts, 'pcnalx') AS matchInfo "
+            + "FROM messages_fts "
+            + "JOIN messages ON messages.id = messages_fts.docid "
+            + "JOIN chat_sessions ON chat_sessions.id = messages.session_id "
+            + "WHERE messages_fts MATCH :match AND messages_fts.docid IN (:messageIds)")
+    List<MessageSearchResult> getResults(String match, List<Integer> messageIds);
+
+    // Ranks the newest CANDIDATE_LIMIT matches by BM25 from their matchinfo blobs and builds snippets only for
+    // the best ones; older matches are not ranked.
+    default List<MessageSearchResult> search(String query, int limit) {
+        String match = toMatchExpression(query);
+        if (match.isEmpty() || limit <= 0) return new ArrayList<>();
+
+        PriorityQueue<double[]> best = new PriorityQueue<>(limit, (a, b) -> Double.compare(a[0], b[0]));
+        try (Cursor cursor = findMatches(match, CANDIDATE_LIMIT)) {
+            while (cursor.moveToNext()) {
+                double score = MessageSearchResult.score(cursor.getBlob(1));
+                if (best.size() < limit) {
+                    best.add(new double[]{score, cursor.getInt(0)});
+                } else if (score > best.peek()[0]) {
+                    best.poll();
+                    best.add(new double[]{score, cursor.getInt(0)});
+                }
+            }
+        }
+        if (best.isEmpty()) return new ArrayList<>();
+
+        List<Integer> messageIds = new ArrayList<>(best.size());
+        for (double[] entry : best) {
+            messageIds.add((int) entry[1]);
+        }
+        List<MessageSearchResult> results = getResults(match, messageIds);
+        Collections.sort(results, (a, b) -> Double.compare(b.score(), a.score()));
+        return results;
+    }
+
+    static String toMatchExpression(String query) {
+        StringBuilder match = new StringBuilder();
+        for (String term : query.trim().split("\\s+")) {
+            String cleaned = term.replace("\"", "").replace("*", "");
+            if (cleaned.isEmpty()) continue;
+            if (match.length() > 0) match.append(' ');
+            match.append('"').append(cleaned).append("*\"");
+        }
+        return match.toString();
+    }
+}
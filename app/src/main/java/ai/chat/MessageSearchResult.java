@@ -0,0 +1,48 @@
+package ai.chat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class MessageSearchResult {
+
+    private static final double BM25_K1 = 1.2;
+    private static final double BM25_B = 0.75;
+
+    public int messageId;
+    public long sessionId;
+    public String sessionTitle;
+    public String snippet;
+    public byte[] matchInfo;
+
+    public double score() {
+        return score(matchInfo);
+    }
+
+    public static double score(byte[] matchInfo) {
+        if (matchInfo == null) return 0;
+        ByteBuffer info = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder());
+        int phrases = info.getInt(0);
+        int columns = info.getInt(4);
+        long rows = info.getInt(8) & 0xffffffffL;
+        int averageOffset = 3;
+        int lengthOffset = averageOffset + columns;
+        int hitsOffset = lengthOffset + columns;
+
+        double score = 0;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columns; column++) {
+                int hits = hitsOffset + 3 * (phrase * columns + column);
+                double termFrequency = info.getInt(hits * 4);
+                if (termFrequency == 0) continue;
+                double docsWithHits = info.getInt((hits + 2) * 4);
+                double averageLength = Math.max(1, info.getInt((averageOffset + column) * 4));
+                double length = info.getInt((lengthOffset + column) * 4);
+
+                double idf = Math.max(1e-6, Math.log((rows - docsWithHits + 0.5) / (docsWithHits + 0.5)));
+                score += idf * termFrequency * (BM25_K1 + 1)
+                        / (termFrequency + BM25_K1 * (1 - BM25_B + BM25_B * length / averageLength));
+            }
+        }
+        return score;
+    }
+}
@@ -0,0 +1,219 @@
+package ai.chat;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import com.google.gson.stream.JsonWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class Metrics {
+
+    private static final int RESERVOIR_SIZE = 512;
+    private static final Map<String, Histogram> histograms = new TreeMap<>();
+    private static final List<Scope> scopes = new ArrayList<>();
+    private static final AtomicInteger asyncCookies = new AtomicInteger();
+
+    public static final class Timer implements AutoCloseable {
+        private final String name;
+        private final long start = SystemClock.elapsedRealtimeNanos();
+
+        private Timer(String name) {
+            this.name = name;
+            Trace.beginSection(name);
+        }
+
+        @Override
+        public void close() {
+            Trace.endSection();
+            record(name, SystemClock.elapsedRealtimeNanos() - start);
+        }
+    }
+
+    public static final class Span {
+        private final String name;
+        private final int cookie = asyncCookies.incrementAndGet();
+        private final long start = SystemClock.elapsedRealtimeNanos();
+        private boolean ended;
+
+        private Span(String name) {
+            this.name = name;
+            if (Build.VERSION.SDK_INT >= 29) Trace.beginAsyncSection(name, cookie);
+        }
+
+        public synchronized void end() {
+            if (ended) return;
+            ended = true;
+            if (Build.VERSION.SDK_INT >= 29) Trace.endAsyncSection(name, cookie);
+            record(name, SystemClock.elapsedRealtimeNanos() - start);
+        }
+    }
+
+    // Collects only what is recorded while it is open, next to the app-wide histograms.
+    public static final class Scope implements AutoCloseable {
+        private final Map<String, Histogram> scoped = new TreeMap<>();
+
+        private Scope() {}
+
+        public List<Summary> snapshot() {
+            synchronized (histograms) {
+                return summarize(scoped);
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (histograms) {
+                scopes.remove(this);
+            }
+        }
+    }
+
+    public static final class Summary {
+        public final String name;
+        public final long count;
+        public final long p50Us;
+        public final long p90Us;
+        public final long p99Us;
+        public final long maxUs;
+
+        Summary(String name, long count, long p50Us, long p90Us, long p99Us, long maxUs) {
+            this.name = name;
+            this.count = count;
+            this.p50Us = p50Us;
+            this.p90Us = p90Us;
+            this.p99Us = p99Us;
+            this.maxUs = maxUs;
+        }
+    }
+
+    private static final class Histogram {
+        final long[] samples = new long[RESERVOIR_SIZE];
+        long count;
+        long max;
+
+        void add(long nanos) {
+            samples[(int) (count % RESERVOIR_SIZE)] = nanos;
+            count++;
+            if (nanos > max) max = nanos;
+        }
+
+        Summary summarize(String name) {
+            int size = (int) Math.min(count, RESERVOIR_SIZE);
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            return new Summary(name, count, percentile(sorted, 50), percentile(sorted, 90),
+                    percentile(sorted, 99), max / 1_000);
+        }
+
+        private static long percentile(long[] sorted, int percentile) {
+            if (sorted.length == 0) return 0;
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1_000;
+        }
+    }
+
+    private Metrics() {}
+
+    public static Timer time(String name) {
+        return new Timer(name);
+    }
+
+    public static Span span(String name) {
+        return new Span(name);
+    }
+
+    public static Scope openScope() {
+        Scope scope = new Scope();
+        synchronized (histograms) {
+            scopes.add(scope);
+        }
+        return scope;
+    }
+
+    public static void record(String name, long nanos) {
+        synchronized (histograms) {
+            add(histograms, name, nanos);
+            for (int i = 0; i < scopes.size(); i++) {
+                add(scopes.get(i).scoped, name, nanos);
+            }
+        }
+    }
+
+    private static void add(Map<String, Histogram> target, String name, long nanos) {
+        Histogram histogram = target.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            target.put(name, histogram);
+        }
+        histogram.add(nanos);
+    }
+
+    public static List<Summary> snapshot() {
+        synchronized (histograms) {
+            return summarize(histograms);
+        }
+    }
+
+    private static List<Summary> summarize(Map<String, Histogram> source) {
+        List<Summary> summaries = new ArrayList<>(source.size());
+        for (Map.Entry<String, Histogram> entry : source.entrySet()) {
+            summaries.add(entry.getValue().summarize(entry.getKey()));
+        }
+        return summaries;
+    }
+
+    public static void reset() {
+        synchronized (histograms) {
+            histograms.clear();
+        }
+    }
+
+    public static String format(List<Summary> summaries) {
+        StringBuilder out = new StringBuilder();
+        for (Summary summary : summaries) {
+            out.append(summary.name).append(" (").append(summary.count).append(")\n")
+                    .append("  p50 ").append(formatMicros(summary.p50Us))
+                    .append("  p90 ").append(formatMicros(summary.p90Us))
+                    .append("  p99 ").append(formatMicros(summary.p99Us))
+                    .append("  max ").append(formatMicros(summary.maxUs)).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static String formatMicros(long micros) {
+        return micros >= 10_000 ? micros / 1_000 + "ms" : micros + "µs";
+    }
+
+    public static File export(File dir) throws IOException {
+        File file = new File(dir, "metrics.json");
+        try (JsonWriter writer = new JsonWriter(new FileWriter(file))) {
+            writer.setIndent("  ");
+            writer.beginObject();
+            writer.name("timestamp").value(System.currentTimeMillis());
+            writer.name("device").value(Build.MODEL);
+            writer.name("sdk").value(Build.VERSION.SDK_INT);
+            writer.name("metrics").beginArray();
+            for (Summary summary : snapshot()) {
+                writer.beginObject();
+                writer.name("name").value(summary.name);
+                writer.name("count").value(summary.count);
+                writer.name("p50Us").value(summary.p50Us);
+                writer.name("p90Us").value(summary.p90Us);
+                writer.name("p99Us").value(summary.p99Us);
+                writer.name("maxUs").value(summary.maxUs);
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,35 @@
+package ai.chat;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+import java.util.List;
+
+@Dao
+public interface OutboxDao {
+
+    @Query("SELECT * FROM outbox WHERE id IN (SELECT MIN(id) FROM outbox GROUP BY session_id) ORDER BY id ASC")
+    List<OutboxEntry> getSessionHeads();
+
+    @Query("SELECT messages.* FROM outbox JOIN messages ON messages.id = outbox.prompt_message_id "
+            + "WHERE outbox.session_id = :sessionId")
+    List<Message> getQueuedPrompts(long sessionId);
+
+    @Insert
+    long enqueue(OutboxEntry entry);
+
+    // Covers prompts still waiting for the network and the one being generated, whose row stays until it
+    // finishes.
+    default boolean isQueued(long sessionId, String prompt) {
+        for (Message queued : getQueuedPrompts(sessionId)) {
+            if (prompt.equals(queued.getText())) return true;
+        }
+        return false;
+    }
+
+    @Query("DELETE FROM outbox WHERE placeholder_message_id = :placeholderMessageId")
+    void deleteForPlaceholder(int placeholderMessageId);
+
+    @Query("DELETE FROM outbox WHERE id = :id")
+    void delete(long id);
+}
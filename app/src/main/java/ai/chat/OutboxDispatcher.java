@@ -0,0 +1,113 @@
+package ai.chat;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import androidx.annotation.NonNull;
+import java.util.List;
+
+public class OutboxDispatcher {
+
+    private static final int MAX_CONCURRENT_SESSIONS = 3;
+
+    private static volatile OutboxDispatcher INSTANCE;
+
+    private final ConnectivityManager connectivityManager;
+    private final DatabaseScheduler scheduler;
+    private final OutboxDao outboxDao;
+    private final MessageDao messageDao;
+    private ChatRequestManager requestManager;
+    private boolean draining;
+    private boolean drainAgain;
+
+    private final ConnectivityManager.NetworkCallback networkCallback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onAvailable(@NonNull Network network) {
+            drain();
+        }
+    };
+
+    public static OutboxDispatcher getInstance(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (OutboxDispatcher.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new OutboxDispatcher(context.getApplicationContext(),
+                            DatabaseScheduler.getInstance(context));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    OutboxDispatcher(Context context, DatabaseScheduler scheduler) {
+        this.connectivityManager = (ConnectivityManager) context.getApplicationContext()
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.scheduler = scheduler;
+        this.outboxDao = scheduler.getDatabase().outboxDao();
+        this.messageDao = scheduler.getDatabase().messageDao();
+    }
+
+    public void start(ChatRequestManager requestManager) {
+        this.requestManager = requestManager;
+        NetworkRequest request = new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build();
+        connectivityManager.registerNetworkCallback(request, networkCallback);
+        drain();
+    }
+
+    public boolean isOnline() {
+        Network network = connectivityManager.getActiveNetwork();
+        if (network == null) return false;
+        NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(network);
+        return capabilities != null && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+    }
+
+    // Runs inside the caller's write task so the row commits together with the exchange it points at;
+    // call drain() once that write has committed.
+    public void enqueue(Message prompt, Message placeholder) {
+        outboxDao.enqueue(new OutboxEntry(prompt.getSessionId(), prompt.getId(), placeholder.getId()));
+    }
+
+    public void drain() {
+        synchronized (this) {
+            if (requestManager == null) return;
+            if (draining) {
+                drainAgain = true;
+                return;
+            }
+            draining = true;
+        }
+        scheduler.readAfterWrites(DatabaseScheduler.PRIORITY_UI, this::runDrain);
+    }
+
+    private void runDrain() {
+        boolean removed = false;
+        if (isOnline()) {
+            List<OutboxEntry> heads = outboxDao.getSessionHeads();
+            for (OutboxEntry entry : heads) {
+                if (requestManager.activeCount() >= MAX_CONCURRENT_SESSIONS) break;
+                if (requestManager.isGenerating(entry.getSessionId())) continue;
+
+                Message prompt = messageDao.getMessage(entry.getPromptMessageId());
+                Message placeholder = messageDao.getMessage(entry.getPlaceholderMessageId());
+                if (prompt == null || placeholder == null || placeholder.getStatus() != Message.STATUS_STREAMING) {
+                    scheduler.write(() -> outboxDao.delete(entry.getId()));
+                    removed = true;
+                    continue;
+                }
+                requestManager.send(prompt, placeholder);
+            }
+        }
+
+        boolean again;
+        synchronized (this) {
+            draining = false;
+            again = drainAgain || removed;
+            drainAgain = false;
+        }
+        if (again) drain();
+    }
+}
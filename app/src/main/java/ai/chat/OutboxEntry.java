@@ -0,0 +1,49 @@
+package ai.chat;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+@Entity(tableName = "outbox",
+        foreignKeys = @ForeignKey(entity = ChatSession.class,
+                parentColumns = "id",
+                childColumns = "session_id",
+                onDelete = ForeignKey.CASCADE),
+        indices = @Index(value = {"session_id", "id"}))
+public class OutboxEntry {
+
+    @PrimaryKey(autoGenerate = true)
+    public long id;
+
+    @ColumnInfo(name = "session_id")
+    private long sessionId;
+
+    @ColumnInfo(name = "prompt_message_id")
+    private int promptMessageId;
+
+    @ColumnInfo(name = "placeholder_message_id")
+    private int placeholderMessageId;
+
+    @ColumnInfo(name = "created_at")
+    private long createdAt;
+
+    public OutboxEntry(long sessionId, int promptMessageId, int placeholderMessageId) {
+        this.sessionId = sessionId;
+        this.promptMessageId = promptMessageId;
+        this.placeholderMessageId = placeholderMessageId;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    public long getId() { return id; }
+    public void setId(long id) { this.id = id; }
+    public long getSessionId() { return sessionId; }
+    public void setSessionId(long sessionId) { this.sessionId = sessionId; }
+    public int getPromptMessageId() { return promptMessageId; }
+    public void setPromptMessageId(int promptMessageId) { this.promptMessageId = promptMessageId; }
+    public int getPlaceholderMessageId() { return placeholderMessageId; }
+    public void setPlaceholderMessageId(int placeholderMessageId) { this.placeholderMessageId = placeholderMessageId; }
+    public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+}
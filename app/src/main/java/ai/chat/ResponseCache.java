@@ -0,0 +1,79 @@
+package ai.chat;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import java.util.concurrent.TimeUnit;
+
+public class ResponseCache {
+
+    private static final String PREFS_NAME = "response_cache";
+    private static final String KEY_ENABLED = "enabled";
+    private static final String KEY_HITS = "hits";
+    private static final String KEY_MISSES = "misses";
+    private static final long TTL_MS = TimeUnit.DAYS.toMillis(1);
+    private static final long MAX_SIZE_CHARS = 2 * 1024 * 1024;
+
+    private static volatile ResponseCache INSTANCE;
+
+    private final SharedPreferences prefs;
+    private final DatabaseScheduler scheduler;
+    private final ResponseCacheDao cacheDao;
+
+    public static ResponseCache getInstance(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (ResponseCache.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new ResponseCache(context.getApplicationContext(),
+                            DatabaseScheduler.getInstance(context));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    ResponseCache(Context context, DatabaseScheduler scheduler) {
+        this.prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.scheduler = scheduler;
+        this.cacheDao = scheduler.getDatabase().responseCacheDao();
+    }
+
+    public boolean isEnabled() {
+        return prefs.getBoolean(KEY_ENABLED, false);
+    }
+
+    public void setEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_ENABLED, enabled).apply();
+        if (!enabled) {
+            scheduler.write(cacheDao::clear);
+        }
+    }
+
+    public int getHits() {
+        return prefs.getInt(KEY_HITS, 0);
+    }
+
+    public int getMisses() {
+        return prefs.getInt(KEY_MISSES, 0);
+    }
+
+    public long getSize() {
+        return cacheDao.totalSize();
+    }
+
+    public String lookup(String key) {
+        long now = System.currentTimeMillis();
+        CachedResponse cached = cacheDao.get(key, now - TTL_MS);
+        synchronized (prefs) {
+            String counter = cached != null ? KEY_HITS : KEY_MISSES;
+            prefs.edit().putInt(counter, prefs.getInt(counter, 0) + 1).apply();
+        }
+        if (cached == null) return null;
+        scheduler.write(() -> cacheDao.touch(key, now));
+        return cached.getResponse();
+    }
+
+    public void store(String key, String response) {
+        CachedResponse entry = new CachedResponse(key, response);
+        scheduler.write(() -> cacheDao.putAndTrim(entry, entry.getCreatedAt() - TTL_MS, MAX_SIZE_CHARS));
+    }
+}
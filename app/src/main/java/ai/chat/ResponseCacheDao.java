@@ -0,0 +1,44 @@
+package ai.chat;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+@Dao
+public interface ResponseCacheDao {
+
+    @Query("SELECT * FROM response_cache WHERE `key` = :key AND created_at >= :notBefore")
+    CachedResponse get(String key, long notBefore);
+
+    @Query("UPDATE response_cache SET last_access = :lastAccess WHERE `key` = :key")
+    void touch(String key, long lastAccess);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void put(CachedResponse response);
+
+    @Query("DELETE FROM response_cache WHERE created_at < :notBefore")
+    void deleteExpired(long notBefore);
+
+    @Query("SELECT COALESCE(SUM(size), 0) FROM response_cache")
+    long totalSize();
+
+    @Query("SELECT COUNT(*) FROM response_cache")
+    int count();
+
+    @Query("DELETE FROM response_cache WHERE `key` IN (SELECT `key` FROM response_cache ORDER BY last_access ASC LIMIT :count)")
+    void deleteLeastRecentlyUsed(int count);
+
+    @Query("DELETE FROM response_cache")
+    void clear();
+
+    @Transaction
+    default void putAndTrim(CachedResponse response, long notBefore, long maxSize) {
+        put(response);
+        deleteExpired(notBefore);
+        while (totalSize() > maxSize && count() > 1) {
+            deleteLeastRecentlyUsed(Math.max(1, count() / 8));
+        }
+    }
+}
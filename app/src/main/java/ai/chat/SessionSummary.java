@@ -0,0 +1,42 @@
+package ai.chat;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.PrimaryKey;
+
+@Entity(tableName = "session_summaries",
+        foreignKeys = @ForeignKey(entity = ChatSession.class,
+                parentColumns = "id",
+                childColumns = "session_id",
+                onDelete = ForeignKey.CASCADE))
+public class SessionSummary {
+
+    @PrimaryKey
+    @ColumnInfo(name = "session_id")
+    public long sessionId;
+
+    private String summary;
+
+    @ColumnInfo(name = "last_message_id")
+    private int lastMessageId;
+
+    @ColumnInfo(name = "updated_at")
+    private long updatedAt;
+
+    public SessionSummary(long sessionId, String summary, int lastMessageId) {
+        this.sessionId = sessionId;
+        this.summary = summary;
+        this.lastMessageId = lastMessageId;
+        this.updatedAt = System.currentTimeMillis();
+    }
+
+    public long getSessionId() { return sessionId; }
+    public void setSessionId(long sessionId) { this.sessionId = sessionId; }
+    public String getSummary() { return summary; }
+    public void setSummary(String summary) { this.summary = summary; }
+    public int getLastMessageId() { return lastMessageId; }
+    public void setLastMessageId(int lastMessageId) { this.lastMessageId = lastMessageId; }
+    public long getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(long updatedAt) { this.updatedAt = updatedAt; }
+}
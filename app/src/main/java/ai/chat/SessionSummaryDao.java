@@ -0,0 +1,16 @@
+package ai.chat;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+@Dao
+public interface SessionSummaryDao {
+
+    @Query("SELECT * FROM session_summaries WHERE session_id = :sessionId")
+    SessionSummary getSummary(long sessionId);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertSummary(SessionSummary summary);
+}
@@ -0,0 +1,104 @@
+package ai.chat;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import java.util.Collections;
+import java.util.List;
+
+public class StartupPrefetch {
+
+    private static final long MAX_AGE_MS = 30_000;
+
+    private static volatile StartupPrefetch INSTANCE;
+
+    private final DatabaseScheduler scheduler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean started;
+    private boolean consumed;
+    private Result result;
+    private Callback callback;
+
+    public interface Callback {
+        void onPrefetched(Result result);
+    }
+
+    public static class Result {
+        public final List<ChatSession> sessions;
+        public final List<Message> latestMessages;
+        final long loadedAt = SystemClock.uptimeMillis();
+
+        Result(List<ChatSession> sessions, List<Message> latestMessages) {
+            this.sessions = sessions;
+            this.latestMessages = latestMessages;
+        }
+    }
+
+    public static StartupPrefetch getInstance(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (StartupPrefetch.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new StartupPrefetch(DatabaseScheduler.getInstance(context));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private StartupPrefetch(DatabaseScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public synchronized void start() {
+        if (started) return;
+        started = true;
+        scheduler.read(DatabaseScheduler.PRIORITY_UI, () -> {
+            AppDatabase db = scheduler.getDatabase();
+            try (Metrics.Timer ignored = Metrics.time("startup.db_open")) {
+                db.getOpenHelper().getWritableDatabase();
+            }
+
+            List<ChatSession> sessions;
+            List<Message> latest = Collections.emptyList();
+            try (Metrics.Timer ignored = Metrics.time("startup.prefetch")) {
+                sessions = db.chatSessionDao().getAllSessions();
+                if (!sessions.isEmpty()) {
+                    latest = db.messageDao().getLatestMessages(sessions.get(0).getId(), MessagePager.PAGE_SIZE);
+                    Collections.reverse(latest);
+                }
+            }
+            deliver(new Result(sessions, latest));
+        });
+    }
+
+    private void deliver(Result loaded) {
+        Callback waiting;
+        synchronized (this) {
+            waiting = callback;
+            callback = null;
+            if (waiting == null) {
+                result = loaded;
+                return;
+            }
+        }
+        mainHandler.post(() -> waiting.onPrefetched(loaded));
+    }
+
+    public boolean consume(Callback callback) {
+        Result ready;
+        synchronized (this) {
+            if (!started || consumed) return false;
+            consumed = true;
+            ready = result;
+            result = null;
+            if (ready == null) {
+                this.callback = callback;
+                return true;
+            }
+            if (SystemClock.uptimeMillis() - ready.loadedAt > MAX_AGE_MS) return false;
+        }
+        callback.onPrefetched(ready);
+        return true;
+    }
+}
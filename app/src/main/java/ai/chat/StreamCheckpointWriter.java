@@ -0,0 +1,106 @@
+package ai.chat;
+
+import android.os.SystemClock;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+public class StreamCheckpointWriter {
+
+    private static final long CHECKPOINT_INTERVAL_MS = 1000;
+    private static final int CHECKPOINT_CHARS = 4 * 1024;
+
+    private final MessageDao messageDao;
+    private final OutboxDao outboxDao;
+    private final DatabaseScheduler scheduler;
+    private final Map<Message, String> pending = new IdentityHashMap<>();
+    private final Map<Message, Checkpoint> checkpoints = new IdentityHashMap<>();
+    private boolean flushScheduled;
+
+    private static class Checkpoint {
+        long time = SystemClock.uptimeMillis();
+        int length;
+        int storedChunks;
+    }
+
+    public StreamCheckpointWriter(MessageDao messageDao, DatabaseScheduler scheduler) {
+        this.messageDao = messageDao;
+        this.outboxDao = scheduler.getDatabase().outboxDao();
+        this.scheduler = scheduler;
+    }
+
+    public void onProgress(Message message, CharSequence text) {
+        synchronized (pending) {
+            Checkpoint checkpoint = checkpoints.get(message);
+            if (checkpoint == null) {
+                checkpoint = new Checkpoint();
+                checkpoints.put(message, checkpoint);
+            }
+            long now = SystemClock.uptimeMillis();
+            if (now - checkpoint.time < CHECKPOINT_INTERVAL_MS && text.length() - checkpoint.length < CHECKPOINT_CHARS) {
+                return;
+            }
+            checkpoint.time = now;
+            checkpoint.length = text.length();
+            pending.put(message, text.toString());
+
+            if (flushScheduled) return;
+            flushScheduled = true;
+        }
+        Flush flush = new Flush();
+        scheduler.write(flush, flush);
+    }
+
+    public int complete(Message message) {
+        synchronized (pending) {
+            pending.remove(message);
+            Checkpoint checkpoint = checkpoints.remove(message);
+            return checkpoint != null ? checkpoint.storedChunks : 0;
+        }
+    }
+
+    private class Flush implements Runnable, DatabaseScheduler.WriteCallback {
+        private Map<Message, String> batch;
+        private final Map<Message, Integer> stored = new IdentityHashMap<>();
+
+        @Override
+        public void run() {
+            if (batch == null) {
+                synchronized (pending) {
+                    batch = new IdentityHashMap<>(pending);
+                    pending.clear();
+                    flushScheduled = false;
+                }
+            }
+            stored.clear();
+            for (Map.Entry<Message, String> entry : batch.entrySet()) {
+                Message message = entry.getKey();
+                if (message.getId() == 0) continue;
+                int fromChunk;
+                synchronized (pending) {
+                    Checkpoint checkpoint = checkpoints.get(message);
+                    if (checkpoint == null) continue;
+                    fromChunk = checkpoint.storedChunks;
+                }
+                stored.put(message, messageDao.storeText(message.getId(), entry.getValue(),
+                        Message.STATUS_STREAMING, false, fromChunk));
+                // Once partial text is on disk the prompt leaves the outbox: after a crash the user is asked
+                // whether to retry it instead of having the answer silently regenerated.
+                outboxDao.deleteForPlaceholder(message.getId());
+            }
+        }
+
+        @Override
+        public void onWriteCommitted() {
+            synchronized (pending) {
+                for (Map.Entry<Message, Integer> entry : stored.entrySet()) {
+                    Checkpoint checkpoint = checkpoints.get(entry.getKey());
+                    if (checkpoint != null) checkpoint.storedChunks = entry.getValue();
+                }
+            }
+        }
+
+        @Override
+        public void onWriteFailed(RuntimeException e) {
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ai.chat;
+
+import android.os.Bundle;
+import android.view.Choreographer;
+import androidx.recyclerview.widget.RecyclerView;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+public class StreamingRenderer implements Choreographer.FrameCallback {
+
+    private final Object lock = new Object();
+    private final Choreographer choreographer;
+    private final RecyclerView recyclerView;
+    private final MessageAdapter adapter;
+    private Map<Message, StringBuilder> pendingDeltas = new IdentityHashMap<>();
+    private final Map<Message, StringBuilder> renderedTexts = new IdentityHashMap<>();
+    private boolean frameScheduled;
+
+    public StreamingRenderer(RecyclerView recyclerView, MessageAdapter adapter) {
+        this.choreographer = Choreographer.getInstance();
+        this.recyclerView = recyclerView;
+        this.adapter = adapter;
+    }
+
+    public void append(Message message, String delta) {
+        synchronized (lock) {
+            StringBuilder pending = pendingDeltas.get(message);
+            if (pending == null) {
+                pending = new StringBuilder();
+                pendingDeltas.put(message, pending);
+            }
+            pending.append(delta);
+            if (frameScheduled) return;
+            frameScheduled = true;
+        }
+        choreographer.postFrameCallback(this);
+    }
+
+    public void finish(Message message) {
+        synchronized (lock) {
+            pendingDeltas.remove(message);
+        }
+        renderedTexts.remove(message);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        Map<Message, StringBuilder> deltas;
+        synchronized (lock) {
+            frameScheduled = false;
+            if (pendingDeltas.isEmpty()) return;
+            deltas = pendingDeltas;
+            pendingDeltas = new IdentityHashMap<>();
+        }
+
+        try (Metrics.Timer ignored = Metrics.time("ui.stream_frame")) {
+            applyDeltas(deltas);
+        }
+    }
+
+    private void applyDeltas(Map<Message, StringBuilder> deltas) {
+        for (Map.Entry<Message, StringBuilder> entry : deltas.entrySet()) {
+            Message message = entry.getKey();
+            StringBuilder rendered = renderedTexts.get(message);
+            if (rendered == null) {
+                rendered = new StringBuilder();
+                renderedTexts.put(message, rendered);
+            }
+            rendered.append(entry.getValue());
+            String text = rendered.toString();
+            message.setText(text);
+
+            int latest = adapter.latestPositionOf(message);
+            if (latest >= 0) {
+                adapter.getLatestList().get(latest).setText(text);
+            }
+            int position = adapter.positionOf(message);
+            if (position >= 0) {
+                adapter.getCurrentList().get(position).setText(text);
+                patch(position, text);
+            }
+        }
+    }
+
+    public void patch(int position, String text) {
+        boolean atBottom = !recyclerView.canScrollVertically(1);
+        Bundle payload = new Bundle();
+        payload.putString(MessageAdapter.KEY_TEXT, text);
+        adapter.notifyItemChanged(position, payload);
+        if (atBottom) {
+            recyclerView.scrollToPosition(adapter.getItemCount() - 1);
+        }
+    }
+}
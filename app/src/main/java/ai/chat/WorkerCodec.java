@@ -0,0 +1,293 @@
+package ai.chat;
+
+import androidx.annotation.NonNull;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+
+public final class WorkerCodec {
+
+    static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    public static final class Turn {
+        public final String role;
+        public final String content;
+
+        public Turn(String role, String content) {
+            this.role = role;
+            this.content = content;
+        }
+    }
+
+    private WorkerCodec() {}
+
+    public static RequestBody requestBody(List<Turn> messages, boolean stream) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return JSON;
+            }
+
+            @Override
+            public void writeTo(@NonNull BufferedSink sink) throws IOException {
+                JsonWriter writer = new JsonWriter(new OutputStreamWriter(sink.outputStream(), StandardCharsets.UTF_8));
+                writePayload(writer, messages, stream);
+                writer.flush();
+            }
+        };
+    }
+
+    static void writePayload(JsonWriter writer, List<Turn> messages, boolean stream) throws IOException {
+        writer.beginObject();
+        writer.name("messages");
+        writeMessages(writer, messages);
+        if (stream) {
+            writer.name("stream").value(true);
+        }
+        writer.endObject();
+    }
+
+    private static void writeMessages(JsonWriter writer, List<Turn> messages) throws IOException {
+        writer.beginArray();
+        for (Turn turn : messages) {
+            writer.beginObject();
+            writer.name("role").value(turn.role);
+            writer.name("content").value(turn.content);
+            writer.endObject();
+        }
+        writer.endArray();
+    }
+
+    public static String sha256(List<Turn> messages) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            OutputStream discard = new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(@NonNull byte[] b, int off, int len) {
+                }
+            };
+            JsonWriter writer = new JsonWriter(new OutputStreamWriter(
+                    new DigestOutputStream(discard, digest), StandardCharsets.UTF_8));
+            writeMessages(writer, messages);
+            writer.flush();
+
+            byte[] hash = digest.digest();
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String readResponse(Reader in) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        try {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) return null;
+            return readContent(reader);
+        } catch (MalformedJsonException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    // Reads every event of a streamed response with one JsonReader over the response source, so a token
+    // costs no line, reader or parser allocation.
+    public static final class EventStream {
+        private final JsonReader reader;
+
+        public EventStream(BufferedSource source) {
+            reader = new JsonReader(new PayloadReader(source));
+            reader.setLenient(true);
+        }
+
+        public boolean hasNext() throws IOException {
+            try {
+                return reader.peek() != JsonToken.END_DOCUMENT;
+            } catch (MalformedJsonException e) {
+                throw new JsonSyntaxException(e);
+            }
+        }
+
+        public String next() throws IOException {
+            try {
+                if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    return null;
+                }
+                return readContent(reader);
+            } catch (MalformedJsonException e) {
+                throw new JsonSyntaxException(e);
+            }
+        }
+    }
+
+    // Yields the payloads of "data:" lines separated by newlines, skips the other SSE fields and ends at
+    // [DONE]. Lines without a field name pass through, for workers that stream bare JSON lines.
+    private static final class PayloadReader extends Reader {
+        private static final ByteString DATA = ByteString.encodeUtf8("data:");
+        private static final ByteString DONE = ByteString.encodeUtf8("[DONE]");
+        private static final ByteString SPACE = ByteString.encodeUtf8(" ");
+        private static final ByteString[] IGNORED = {
+                ByteString.encodeUtf8(":"), ByteString.encodeUtf8("event:"),
+                ByteString.encodeUtf8("id:"), ByteString.encodeUtf8("retry:")
+        };
+
+        private final BufferedSource source;
+        private boolean inLine;
+        private boolean done;
+        private char pendingLowSurrogate;
+
+        PayloadReader(BufferedSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read(@NonNull char[] buffer, int offset, int length) throws IOException {
+            if (length == 0) return 0;
+            int count = 0;
+            if (pendingLowSurrogate != 0) {
+                buffer[offset + count++] = pendingLowSurrogate;
+                pendingLowSurrogate = 0;
+            }
+            while (count < length) {
+                if (!inLine) {
+                    // Hand back what we have instead of blocking on the next event.
+                    if (count > 0) return count;
+                    if (!startLine()) return -1;
+                    inLine = true;
+                }
+                int codePoint = source.exhausted() ? '\n' : source.readUtf8CodePoint();
+                if (codePoint == '\n') {
+                    inLine = false;
+                    buffer[offset + count++] = '\n';
+                    return count;
+                }
+                if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    buffer[offset + count++] = (char) codePoint;
+                    continue;
+                }
+                int supplementary = codePoint - Character.MIN_SUPPLEMENTARY_CODE_POINT;
+                buffer[offset + count++] = (char) ((supplementary >>> 10) + Character.MIN_HIGH_SURROGATE);
+                char low = (char) ((supplementary & 0x3FF) + Character.MIN_LOW_SURROGATE);
+                if (count < length) {
+                    buffer[offset + count++] = low;
+                } else {
+                    pendingLowSurrogate = low;
+                }
+            }
+            return count;
+        }
+
+        private boolean startLine() throws IOException {
+            while (!done && !source.exhausted()) {
+                if (source.rangeEquals(0, DATA)) {
+                    source.skip(DATA.size());
+                    while (source.rangeEquals(0, SPACE)) source.skip(1);
+                } else if (isIgnored()) {
+                    skipLine();
+                    continue;
+                }
+                if (source.rangeEquals(0, DONE)) {
+                    done = true;
+                    return false;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private boolean isIgnored() throws IOException {
+            for (ByteString field : IGNORED) {
+                if (source.rangeEquals(0, field)) return true;
+            }
+            return false;
+        }
+
+        private void skipLine() throws IOException {
+            long newline = source.indexOf((byte) '\n');
+            source.skip(newline == -1 ? source.getBuffer().size() : newline + 1);
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+
+    private static String readContent(JsonReader reader) throws IOException {
+        String content = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("response".equals(name) && reader.peek() == JsonToken.STRING) {
+                content = reader.nextString();
+            } else if ("choices".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                String choice = readFirstChoice(reader);
+                if (choice != null) content = choice;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return content;
+    }
+
+    private static String readFirstChoice(JsonReader reader) throws IOException {
+        String content = null;
+        reader.beginArray();
+        if (reader.hasNext() && reader.peek() == JsonToken.BEGIN_OBJECT) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (("delta".equals(name) || "message".equals(name)) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    content = readContentField(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        while (reader.hasNext()) {
+            reader.skipValue();
+        }
+        reader.endArray();
+        return content;
+    }
+
+    private static String readContentField(JsonReader reader) throws IOException {
+        String content = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("content".equals(name) && reader.peek() == JsonToken.STRING) {
+                content = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return content;
+    }
+}
@@ -0,0 +1,52 @@
+package ai.chat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ConversationContextBuilderTest {
+
+    private static String repeat(String text, int count) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < count; i++) out.append(text);
+        return out.toString();
+    }
+
+    @Test
+    public void estimatesAsciiAndOtherTextSeparately() {
+        assertEquals(4, ConversationContextBuilder.estimateTokens(""));
+        assertEquals(5, ConversationContextBuilder.estimateTokens("abcd"));
+        assertEquals(6, ConversationContextBuilder.estimateTokens("abcde"));
+        assertEquals(6, ConversationContextBuilder.estimateTokens("سلام"));
+    }
+
+    @Test
+    public void leavesTextWithinBudgetUntouched() {
+        String text = "hello";
+        assertSame(text, ConversationContextBuilder.clipToTokens(text, 100));
+    }
+
+    @Test
+    public void clipsToBudget() {
+        String clipped = ConversationContextBuilder.clipToTokens(repeat("a", 400), 14);
+        assertEquals(40, clipped.length());
+        assertTrue(ConversationContextBuilder.estimateTokens(clipped) <= 14);
+    }
+
+    @Test
+    public void clipsMixedTextToBudget() {
+        String text = repeat("abc سلام ", 200);
+        for (int budget = 5; budget < 200; budget += 7) {
+            String clipped = ConversationContextBuilder.clipToTokens(text, budget);
+            assertTrue(text.startsWith(clipped));
+            assertTrue(ConversationContextBuilder.estimateTokens(clipped) <= budget);
+        }
+    }
+
+    @Test
+    public void doesNotSplitSurrogatePairs() {
+        assertEquals("é", ConversationContextBuilder.clipToTokens("é😀😀", 5));
+    }
+}
@@ -0,0 +1,91 @@
+package ai.chat;
+
+import static org.junit.Assert.assertEquals;
+
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.BulletSpan;
+import android.text.style.StyleSpan;
+import android.text.style.TypefaceSpan;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class MarkdownRendererTest {
+
+    @Test
+    public void tailStartsAfterLastBlankLine() {
+        assertEquals(10, MarkdownRenderer.findTailStart("para one\n\npara two", 0));
+        assertEquals(0, MarkdownRenderer.findTailStart("no boundary yet", 0));
+    }
+
+    @Test
+    public void blankLinesInsideOpenFenceAreNotBoundaries() {
+        assertEquals(0, MarkdownRenderer.findTailStart("```\na\n\nb\n", 0));
+    }
+
+    @Test
+    public void closedFenceIsABoundary() {
+        assertEquals(11, MarkdownRenderer.findTailStart("```\na\n\n```\nrest", 0));
+    }
+
+    @Test
+    public void searchResumesFromPreviousBoundary() {
+        String text = "one\n\ntwo\n\nthree";
+        int first = MarkdownRenderer.findTailStart(text, 0);
+        assertEquals(10, first);
+        assertEquals(first, MarkdownRenderer.findTailStart(text, first));
+    }
+
+    @Test
+    public void rendersHeadingAndBold() {
+        SpannableStringBuilder out = render("# Title\nplain **bold** text");
+        assertEquals("Title\nplain bold text", out.toString());
+
+        StyleSpan[] spans = out.getSpans(0, out.length(), StyleSpan.class);
+        assertEquals(2, spans.length);
+        for (StyleSpan span : spans) {
+            assertEquals(Typeface.BOLD, span.getStyle());
+        }
+        assertEquals(0, out.getSpanStart(spans[0]));
+        assertEquals(5, out.getSpanEnd(spans[0]));
+        assertEquals(12, out.getSpanStart(spans[1]));
+        assertEquals(16, out.getSpanEnd(spans[1]));
+    }
+
+    @Test
+    public void rendersFencedCodeWithoutFences() {
+        SpannableStringBuilder out = render("```\ncode\n```\nafter");
+        assertEquals("code\nafter", out.toString());
+        TypefaceSpan[] spans = out.getSpans(0, out.length(), TypefaceSpan.class);
+        assertEquals(1, spans.length);
+        assertEquals(0, out.getSpanStart(spans[0]));
+        assertEquals(5, out.getSpanEnd(spans[0]));
+    }
+
+    @Test
+    public void rendersBullets() {
+        SpannableStringBuilder out = render("- item");
+        assertEquals("item", out.toString());
+        assertEquals(1, out.getSpans(0, out.length(), BulletSpan.class).length);
+    }
+
+    @Test
+    public void rendersOnlyTheRequestedRange() {
+        String text = "skip\n\n*kept*";
+        SpannableStringBuilder out = MarkdownRenderer.renderSegment(text, 6, text.length());
+        assertEquals("kept", out.toString());
+        StyleSpan[] spans = out.getSpans(0, out.length(), StyleSpan.class);
+        assertEquals(1, spans.length);
+        assertEquals(Typeface.ITALIC, spans[0].getStyle());
+        assertEquals(Spanned.SPAN_EXCLUSIVE_EXCLUSIVE, out.getSpanFlags(spans[0]));
+    }
+
+    private static SpannableStringBuilder render(String text) {
+        return MarkdownRenderer.renderSegment(text, 0, text.length());
+    }
+}
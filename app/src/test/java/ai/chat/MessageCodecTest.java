@@ -0,0 +1,57 @@
+package ai.chat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MessageCodecTest {
+
+    private static String repeat(String text, int length) {
+        StringBuilder out = new StringBuilder(length);
+        while (out.length() < length) out.append(text);
+        return out.substring(0, length);
+    }
+
+    @Test
+    public void keepsShortTextPlain() {
+        MessageCodec.Encoded encoded = MessageCodec.encode("سلام");
+        assertEquals(MessageCodec.PLAIN, encoded.codec);
+        assertEquals("سلام", encoded.text);
+        assertNull(encoded.body);
+    }
+
+    @Test
+    public void keepsNullPlain() {
+        MessageCodec.Encoded encoded = MessageCodec.encode(null);
+        assertEquals(MessageCodec.PLAIN, encoded.codec);
+        assertNull(encoded.text);
+    }
+
+    @Test
+    public void deflatesLongText() {
+        String text = repeat("متن طولانی برای فشرده‌سازی. ", MessageCodec.COMPRESS_THRESHOLD);
+        MessageCodec.Encoded encoded = MessageCodec.encode(text);
+        assertEquals(MessageCodec.DEFLATE, encoded.codec);
+        assertNull(encoded.text);
+        assertNotNull(encoded.body);
+        assertTrue(encoded.body.length < text.length());
+        assertEquals(text, MessageCodec.decode(encoded.text, encoded.body, encoded.codec));
+    }
+
+    @Test
+    public void decodesPlainText() {
+        assertEquals("plain", MessageCodec.decode("plain", null, MessageCodec.PLAIN));
+        assertEquals("plain", MessageCodec.decode("plain", null, MessageCodec.DEFLATE));
+    }
+
+    @Test
+    public void returnsEmptyTextForCorruptBody() {
+        byte[] body = MessageCodec.deflate(repeat("abc", 4096));
+        byte[] truncated = new byte[body.length / 2];
+        System.arraycopy(body, 0, truncated, 0, truncated.length);
+        assertEquals("", MessageCodec.decode(null, truncated, MessageCodec.DEFLATE));
+    }
+}
@@ -0,0 +1,68 @@
+package ai.chat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+
+public class MessageSearchResultTest {
+
+    // matchinfo(messages_fts, 'pcnalx') for one column: phrases, columns, rows, average length, length, then
+    // hits in this row, hits in all rows and rows with hits for each phrase.
+    private static byte[] matchInfo(int rows, int averageLength, int length, int[]... phrases) {
+        ByteBuffer info = ByteBuffer.allocate((5 + 3 * phrases.length) * 4).order(ByteOrder.nativeOrder());
+        info.putInt(phrases.length).putInt(1).putInt(rows).putInt(averageLength).putInt(length);
+        for (int[] phrase : phrases) {
+            info.putInt(phrase[0]).putInt(phrase[1]).putInt(phrase[2]);
+        }
+        return info.array();
+    }
+
+    @Test
+    public void scoresMissingInfoAsZero() {
+        assertEquals(0, MessageSearchResult.score(null), 0);
+    }
+
+    @Test
+    public void scoresRowsWithoutHitsAsZero() {
+        assertEquals(0, MessageSearchResult.score(matchInfo(1000, 20, 20, new int[]{0, 50, 10})), 0);
+    }
+
+    @Test
+    public void moreHitsScoreHigher() {
+        double once = MessageSearchResult.score(matchInfo(1000, 20, 20, new int[]{1, 50, 10}));
+        double twice = MessageSearchResult.score(matchInfo(1000, 20, 20, new int[]{2, 50, 10}));
+        assertTrue(once > 0);
+        assertTrue(twice > once);
+    }
+
+    @Test
+    public void rarerTermsScoreHigher() {
+        double rare = MessageSearchResult.score(matchInfo(1000, 20, 20, new int[]{1, 5, 5}));
+        double common = MessageSearchResult.score(matchInfo(1000, 20, 20, new int[]{1, 400, 400}));
+        assertTrue(rare > common);
+    }
+
+    @Test
+    public void shorterRowsScoreHigher() {
+        double shortRow = MessageSearchResult.score(matchInfo(1000, 20, 10, new int[]{1, 50, 10}));
+        double longRow = MessageSearchResult.score(matchInfo(1000, 20, 80, new int[]{1, 50, 10}));
+        assertTrue(shortRow > longRow);
+    }
+
+    @Test
+    public void sumsOverPhrases() {
+        double first = MessageSearchResult.score(matchInfo(1000, 20, 20, new int[]{1, 50, 10}));
+        double both = MessageSearchResult.score(matchInfo(1000, 20, 20, new int[]{1, 50, 10}, new int[]{1, 50, 10}));
+        assertEquals(2 * first, both, 1e-9);
+    }
+
+    @Test
+    public void instanceScoreUsesItsBlob() {
+        MessageSearchResult result = new MessageSearchResult();
+        result.matchInfo = matchInfo(1000, 20, 20, new int[]{1, 50, 10});
+        assertEquals(MessageSearchResult.score(result.matchInfo), result.score(), 0);
+    }
+}
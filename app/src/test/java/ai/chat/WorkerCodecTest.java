@@ -0,0 +1,99 @@
+package ai.chat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.JsonSyntaxException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import okio.Buffer;
+import org.junit.Test;
+
+public class WorkerCodecTest {
+
+    private static List<String> readAll(String stream) throws IOException {
+        WorkerCodec.EventStream events = new WorkerCodec.EventStream(new Buffer().writeUtf8(stream));
+        List<String> tokens = new ArrayList<>();
+        while (events.hasNext()) {
+            tokens.add(events.next());
+        }
+        return tokens;
+    }
+
+    private static String response(String token) {
+        return "{\"response\":\"" + token + "\"}";
+    }
+
+    @Test
+    public void readsDataPayloadsUntilDone() throws IOException {
+        List<String> tokens = readAll("data: " + response("Hel") + "\n\n"
+                + "data: " + response("lo") + "\n\n"
+                + "data: [DONE]\n\n"
+                + "data: " + response("ignored") + "\n\n");
+        assertEquals(List.of("Hel", "lo"), tokens);
+    }
+
+    @Test
+    public void skipsCommentsAndOtherFields() throws IOException {
+        List<String> tokens = readAll(": keep-alive\n"
+                + "event: message\n"
+                + "id: 3\n"
+                + "retry: 1000\n"
+                + "data:{\"choices\":[{\"index\":0,\"delta\":{\"content\":\"x\"}}]}\n\n");
+        assertEquals(List.of("x"), tokens);
+    }
+
+    @Test
+    public void readsBareJsonLines() throws IOException {
+        assertEquals(List.of("a", "b"), readAll(response("a") + "\n" + response("b") + "\n"));
+    }
+
+    @Test
+    public void handlesCrLfLineEndings() throws IOException {
+        assertEquals(List.of("a"), readAll("data: " + response("a") + "\r\n\r\ndata: [DONE]\r\n\r\n"));
+    }
+
+    @Test
+    public void returnsNullForEventsWithoutContent() throws IOException {
+        List<String> tokens = readAll("data: {\"choices\":[{\"delta\":{\"role\":\"assistant\"}}]}\n\n");
+        assertEquals(1, tokens.size());
+        assertNull(tokens.get(0));
+    }
+
+    @Test
+    public void keepsSupplementaryCharactersAcrossReads() throws IOException {
+        StringBuilder token = new StringBuilder();
+        token.append('a');
+        for (int i = 0; i < 1500; i++) {
+            token.append("😀");
+        }
+        List<String> tokens = readAll("data: " + response(token.toString()) + "\n\n");
+        assertEquals(List.of(token.toString()), tokens);
+    }
+
+    @Test
+    public void endsOnExhaustedSource() throws IOException {
+        WorkerCodec.EventStream events = new WorkerCodec.EventStream(new Buffer().writeUtf8("data: " + response("a")));
+        assertTrue(events.hasNext());
+        assertEquals("a", events.next());
+        assertFalse(events.hasNext());
+    }
+
+    @Test
+    public void rejectsMalformedPayload() {
+        assertThrows(JsonSyntaxException.class, () -> readAll("data: {\"response\":}\n\n"));
+    }
+
+    @Test
+    public void readsWholeResponse() throws IOException {
+        assertEquals("done", WorkerCodec.readResponse(new StringReader(response("done"))));
+        assertEquals("c", WorkerCodec.readResponse(new StringReader(
+                "{\"choices\":[{\"message\":{\"role\":\"assistant\",\"content\":\"c\"}}]}")));
+        assertNull(WorkerCodec.readResponse(new StringReader("[]")));
+    }
+}
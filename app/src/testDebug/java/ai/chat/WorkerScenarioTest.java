@@ -0,0 +1,297 @@
+package ai.chat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.os.Looper;
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+// Drives ChatRequestManager against a local worker and checks what reaches Room. Retries are posted to the
+// main looper, so the test thread idles it while it waits.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class WorkerScenarioTest implements ChatRequestManager.GenerationListener {
+
+    private static final long TIMEOUT_MS = 60_000;
+
+    private Context context;
+    private AppDatabase db;
+    private DatabaseScheduler scheduler;
+    private MessageDao messageDao;
+    private ChatRequestManager requestManager;
+    private OutboxDispatcher outbox;
+    private String promptText;
+    private MockWorker worker;
+    private MockWebServer server;
+
+    private final List<Message> placeholders = new ArrayList<>();
+    private final Map<Integer, StringBuilder> streamed = new ConcurrentHashMap<>();
+    private final Map<Integer, String> finished = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicInteger> remaining = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private CountDownLatch done;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .allowMainThreadQueries()
+                .build();
+        scheduler = new DatabaseScheduler(db);
+        messageDao = db.messageDao();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (worker != null) worker.shutdown();
+        if (server != null) server.shutdown();
+        scheduler.shutdown();
+        db.close();
+    }
+
+    @Test
+    public void streamsWorkersAiEvents() throws Exception {
+        MockWorker.Config config = quietConfig();
+        run(startWorker(config), 4, 25);
+
+        assertEquals(100, finished.size());
+        assertStoredAsFinished();
+        for (Message placeholder : placeholders) {
+            String text = finished.get(placeholder.getId());
+            assertFalse(text, text.startsWith("خطا"));
+            assertEquals(text, streamed.get(placeholder.getId()).toString());
+        }
+        assertTrue(worker.getRequestCount() >= 100);
+    }
+
+    @Test
+    public void streamsOpenAiDeltas() throws Exception {
+        MockWorker.Config config = quietConfig();
+        config.openAiFormat = true;
+        run(startWorker(config), 2, 5);
+
+        assertStoredAsFinished();
+        for (Message placeholder : placeholders) {
+            assertEquals(finished.get(placeholder.getId()), streamed.get(placeholder.getId()).toString());
+        }
+    }
+
+    @Test
+    public void readsSingleJsonResponses() throws Exception {
+        MockWorker.Config config = quietConfig();
+        config.streamRatio = 0;
+        run(startWorker(config), 2, 5);
+
+        assertStoredAsFinished();
+        for (Message placeholder : placeholders) {
+            assertFalse(finished.get(placeholder.getId()).startsWith("خطا"));
+            assertNull(streamed.get(placeholder.getId()));
+        }
+    }
+
+    @Test
+    public void chunksLongResponses() throws Exception {
+        MockWorker.Config config = quietConfig();
+        config.tokensPerResponse = 30_000;
+        run(startWorker(config), 1, 2);
+
+        assertStoredAsFinished();
+        for (Message placeholder : placeholders) {
+            Message stored = messageDao.getMessage(placeholder.getId());
+            assertTrue(stored.getChunkCount() > 0);
+            assertEquals(Message.PREVIEW_CHARS, stored.getText().length());
+            for (MessageChunk chunk : messageDao.getChunks(stored.getId())) {
+                assertTrue(chunk.getCodec() == MessageCodec.DEFLATE
+                        || chunk.decodeText().length() < MessageCodec.COMPRESS_THRESHOLD);
+            }
+        }
+    }
+
+    @Test
+    public void completesEveryMessageDespiteInjectedErrors() throws Exception {
+        MockWorker.Config config = quietConfig();
+        config.errorRate = 0.4;
+        run(startWorker(config), 3, 10);
+
+        assertEquals(30, finished.size());
+        assertStoredAsFinished();
+        assertTrue(worker.getInjectedErrors() > 0);
+    }
+
+    @Test
+    public void storesNonRetryableErrors() throws Exception {
+        server = new MockWebServer();
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("{\"error\":\"bad request\"}"));
+        server.start();
+        run(server.url("/").toString(), 1, 1);
+
+        assertEquals("خطا: 400", finished.get(placeholders.get(0).getId()));
+        assertStoredAsFinished();
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void resendsPlainBodyWhenGzipIsRejected() throws Exception {
+        server = new MockWebServer();
+        server.enqueue(new MockResponse().setResponseCode(415));
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "text/event-stream")
+                .setBody("data: {\"response\":\"ok\"}\n\ndata: [DONE]\n\n"));
+        server.start();
+        StringBuilder prompt = new StringBuilder();
+        while (prompt.length() < 4096) prompt.append("یک پیام طولانی برای فشرده‌سازی ");
+        run(server.url("/").toString(), 1, 1, prompt.toString());
+
+        assertEquals("ok", finished.get(placeholders.get(0).getId()));
+        assertStoredAsFinished();
+        RecordedRequest compressed = server.takeRequest();
+        RecordedRequest plain = server.takeRequest();
+        assertEquals("gzip", compressed.getHeader("Content-Encoding"));
+        assertNull(plain.getHeader("Content-Encoding"));
+        assertTrue(plain.getBody().readUtf8().contains("یک پیام طولانی"));
+    }
+
+    private static MockWorker.Config quietConfig() {
+        MockWorker.Config config = new MockWorker.Config();
+        config.tokensPerResponse = 40;
+        config.tokensPerSecond = 0;
+        config.latencyMs = 0;
+        config.jitterMs = 0;
+        config.errorRate = 0;
+        return config;
+    }
+
+    private String startWorker(MockWorker.Config config) throws IOException {
+        worker = new MockWorker(config);
+        return worker.start();
+    }
+
+    private void run(String workerUrl, int sessions, int messagesPerSession) throws InterruptedException {
+        run(workerUrl, sessions, messagesPerSession, null);
+    }
+
+    private void run(String workerUrl, int sessions, int messagesPerSession, String prompt)
+            throws InterruptedException {
+        ConversationContextBuilder contextBuilder = new ConversationContextBuilder(messageDao,
+                db.sessionSummaryDao(), ConversationContextBuilder.DEFAULT_TOKEN_BUDGET);
+        ConversationSummarizer summarizer = new ConversationSummarizer(messageDao, db.sessionSummaryDao(),
+                scheduler, ChatTransport.getInstance().getClient(), workerUrl);
+        ResponseCache responseCache = new ResponseCache(context, scheduler) {
+            @Override
+            public boolean isEnabled() {
+                return false;
+            }
+        };
+        outbox = new OutboxDispatcher(context, scheduler) {
+            @Override
+            public boolean isOnline() {
+                return true;
+            }
+        };
+        requestManager = new ChatRequestManager(ChatTransport.getInstance().getClient(), scheduler, contextBuilder,
+                new StreamCheckpointWriter(messageDao, scheduler), summarizer, responseCache, outbox, workerUrl,
+                this);
+        promptText = prompt;
+
+        done = new CountDownLatch(sessions);
+        for (int i = 0; i < sessions; i++) {
+            long sessionId = db.chatSessionDao().insertSession(new ChatSession("scenario " + i));
+            remaining.put(sessionId, new AtomicInteger(messagesPerSession));
+            sendNext(sessionId);
+        }
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!done.await(10, TimeUnit.MILLISECONDS)) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out with " + finished.size() + " finished messages");
+            }
+            shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(100));
+        }
+        assertEquals(0, queued.get());
+    }
+
+    private void sendNext(long sessionId) {
+        int index = remaining.get(sessionId).get();
+        Message prompt = new Message(sessionId, promptText != null ? promptText : "prompt " + index,
+                Message.TYPE_USER);
+        Message placeholder = new Message(sessionId, "...", Message.TYPE_AI);
+        placeholder.setStatus(Message.STATUS_STREAMING);
+        synchronized (placeholders) {
+            placeholders.add(placeholder);
+        }
+
+        scheduler.write(() -> {
+            messageDao.appendExchange(prompt, placeholder);
+            outbox.enqueue(prompt, placeholder);
+        });
+        scheduler.readAfterWrites(DatabaseScheduler.PRIORITY_UI, () -> {
+            if (!requestManager.send(prompt, placeholder)) {
+                queued.incrementAndGet();
+                done.countDown();
+            }
+        });
+    }
+
+    private void assertStoredAsFinished() {
+        for (Message placeholder : placeholders) {
+            Message stored = messageDao.getMessage(placeholder.getId());
+            assertEquals(Message.STATUS_COMPLETE, stored.getStatus());
+            assertEquals(finished.get(placeholder.getId()), messageDao.getFullText(stored));
+        }
+        assertTrue(db.outboxDao().getSessionHeads().isEmpty());
+    }
+
+    @Override
+    public void onGenerationStarted(long sessionId) {
+    }
+
+    @Override
+    public void onGenerationDelta(long sessionId, Message placeholder, String delta) {
+        StringBuilder text = streamed.computeIfAbsent(placeholder.getId(), id -> new StringBuilder());
+        synchronized (text) {
+            text.append(delta);
+        }
+    }
+
+    @Override
+    public void onGenerationQueued(long sessionId, Message placeholder) {
+        queued.incrementAndGet();
+        done.countDown();
+    }
+
+    @Override
+    public void onGenerationFinished(long sessionId, Message placeholder, String text, boolean cached) {
+        finished.put(placeholder.getId(), text);
+        if (remaining.get(sessionId).decrementAndGet() > 0) {
+            sendNext(sessionId);
+        } else {
+            done.countDown();
+        }
+    }
+}